@@ -0,0 +1,130 @@
+package main.java.capture;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Encodage JPEG d'une image de bureau synthétique en 480x270 et 1920x1080,
+ * même qualité (0.50) des deux côtés :
+ *
+ *   avant    : ancien ImageCompressor, writer, ImageOutputStream et
+ *              ByteArrayOutputStream recréés à chaque image
+ *   réutilisé : ImageCompressor actuel (writer, paramètres et tampon conservés)
+ *
+ * Temps par image et octets alloués par image sur le thread d'encodage.
+ *
+ *   javac -encoding UTF-8 -d out $(find src bench -name '*.java')
+ *   java -Djava.awt.headless=true -cp out main.java.capture.ImageEncoderBench
+ */
+public final class ImageEncoderBench {
+    private static final float QUALITY = 0.50f;
+    private static final int[][] SIZES = {{480, 270}, {1920, 1080}};
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+    private interface Encoder {
+        byte[] encode(BufferedImage image) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        ImageCompressor compressor = new ImageCompressor();
+        Encoder before = ImageEncoderBench::encodeWithNewWriter;
+        Encoder reused = image -> compressor.compressImage(image, QUALITY);
+
+        System.out.printf("%-10s %10s %10s %14s %12s%n", "encodeur", "taille", "ms/image", "Ko alloués", "Ko sortie");
+        for (int[] size : SIZES) {
+            BufferedImage image = desktopImage(size[0], size[1]);
+            // Petites images : le coût fixe par image domine, plus d'itérations
+            int frames = size[0] * size[1] <= 480 * 270 ? 2_000 : 100;
+            for (int round = 0; round < 2; round++) {
+                measure("avant", before, image, frames, round == 1);
+                measure("réutilisé", reused, image, frames, round == 1);
+            }
+        }
+        compressor.dispose();
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    // Premier tour : chauffe du JIT, rien n'est affiché
+    private static void measure(String name, Encoder encoder, BufferedImage image, int frames, boolean print)
+            throws IOException {
+        long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        int outputBytes = 0;
+        for (int i = 0; i < frames; i++) {
+            outputBytes = encoder.encode(image).length;
+            sink += outputBytes;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+        if (print) {
+            System.out.printf("%-10s %10s %10.2f %14.1f %12.1f%n", name, image.getWidth() + "x" + image.getHeight(),
+                    elapsed / 1e6 / frames, allocated / 1024.0 / frames, outputBytes / 1024.0);
+        }
+    }
+
+    // Ancien encodeur : recherche du writer et flux neufs à chaque image
+    private static byte[] encodeWithNewWriter(BufferedImage image) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
+        ImageWriter writer = writers.next();
+
+        ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
+        writer.setOutput(ios);
+
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(QUALITY);
+
+        writer.write(null, new IIOImage(image, null, null), param);
+
+        writer.dispose();
+        ios.close();
+
+        return baos.toByteArray();
+    }
+
+    // Fond dégradé, fenêtres et texte : proche d'une capture de bureau pour le JPEG
+    private static BufferedImage desktopImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(30, 60, 120), width, height, new Color(140, 80, 160)));
+        g.fillRect(0, 0, width, height);
+
+        int windowWidth = width / 3;
+        int windowHeight = height / 3;
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, Math.max(8, height / 60)));
+        for (int w = 0; w < 4; w++) {
+            int x = width / 12 + w * width / 6;
+            int y = height / 10 + w * height / 8;
+            g.setColor(new Color(245, 245, 245));
+            g.fillRect(x, y, windowWidth, windowHeight);
+            g.setColor(new Color(50, 50, 70));
+            g.fillRect(x, y, windowWidth, Math.max(4, height / 40));
+            for (int line = 1; line < 12; line++) {
+                g.drawString("Ligne " + line + " : lorem ipsum dolor sit amet 0123456789",
+                        x + 6, y + Math.max(4, height / 40) + line * Math.max(9, height / 50));
+            }
+        }
+        g.dispose();
+        return image;
+    }
+}
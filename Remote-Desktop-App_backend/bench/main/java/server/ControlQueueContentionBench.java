@@ -0,0 +1,101 @@
+package main.java.server;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import main.java.utils.TimerWheel;
+
+/**
+ * Contention sur ControlQueue : un contrôleur à 500 événements/s
+ * (hasControl puis refreshActivity, comme chaque INPUT_EVENT) pendant que
+ * 50 clients en attente interrogent leur position en boucle. Mesure la
+ * latence de chaque événement du contrôleur.
+ *
+ *   lockfree : appels tels quels (lectures sans verrou)
+ *   locked   : mêmes appels sous le moniteur de la file, comme avant le
+ *              passage aux lectures sans verrou
+ *
+ *   javac -encoding UTF-8 -d out $(find src bench -name '*.java')
+ *   java -cp out main.java.server.ControlQueueContentionBench [lockfree|locked] [secondes, 10 par défaut]
+ */
+public final class ControlQueueContentionBench {
+    private static final int EVENTS_PER_SECOND = 500;
+    private static final int WAITING_CLIENTS = 50;
+    private static final String CONTROLLER = "controller";
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean locked = args.length > 0 && args[0].equals("locked");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        TimerWheel timers = new TimerWheel("rc-timers", 100, 512);
+        ControlQueue queue = new ControlQueue(timers);
+
+        // Les journaux de la file fausseraient les mesures
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        queue.requestControl(CONTROLLER);
+        for (int i = 0; i < WAITING_CLIENTS; i++) {
+            queue.requestControl("waiting-" + i);
+        }
+
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder polls = new LongAdder();
+        Thread[] pollers = new Thread[WAITING_CLIENTS];
+        for (int i = 0; i < WAITING_CLIENTS; i++) {
+            String clientId = "waiting-" + i;
+            pollers[i] = new Thread(() -> {
+                while (!stop.get()) {
+                    if (locked) {
+                        synchronized (queue) {
+                            queue.getQueuePosition(clientId);
+                        }
+                    } else {
+                        queue.getQueuePosition(clientId);
+                    }
+                    polls.increment();
+                }
+            }, "poller-" + i);
+            pollers[i].start();
+        }
+
+        int events = EVENTS_PER_SECOND * seconds;
+        long period = 1_000_000_000L / EVENTS_PER_SECOND;
+        long[] latencies = new long[events];
+        long next = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            next += period;
+            while (System.nanoTime() < next) {
+                Thread.onSpinWait();
+            }
+            long start = System.nanoTime();
+            if (locked) {
+                synchronized (queue) {
+                    if (queue.hasControl(CONTROLLER)) {
+                        queue.refreshActivity(CONTROLLER);
+                    }
+                }
+            } else if (queue.hasControl(CONTROLLER)) {
+                queue.refreshActivity(CONTROLLER);
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        stop.set(true);
+        for (Thread poller : pollers) {
+            poller.join();
+        }
+        System.setOut(console);
+
+        Arrays.sort(latencies);
+        System.out.printf("%s, %d événements en %d s, %d lectures de position%n",
+                locked ? "locked" : "lockfree", events, seconds, polls.sum());
+        System.out.printf("latence par événement : p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                latencies[events / 2] / 1e3, latencies[events * 99 / 100] / 1e3,
+                latencies[events * 999 / 1000] / 1e3, latencies[events - 1] / 1e3);
+        timers.shutdown();
+        queue.shutdown();
+    }
+}
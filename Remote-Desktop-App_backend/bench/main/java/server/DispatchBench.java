@@ -0,0 +1,144 @@
+package main.java.server;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import main.java.control.CustomInputEvent;
+import main.java.control.InputEventCodec;
+
+/**
+ * Coût de l'aiguillage d'un message reçu, par type : classement puis
+ * lecture des arguments, sans le traitement lui-même.
+ *
+ *   avant : String du message, chaîne startsWith/equals dans l'ordre de
+ *           l'ancien handleMessage, puis substring/split des arguments
+ *   table : InboundMessage.parse (hachage du préfixe texte ou opcode binaire)
+ *           et lecture des champs sur place
+ *
+ * La ligne INPUT_EVENT binaire est le chemin du thread de lecture : opcode
+ * puis InputEventCodec.decode dans un événement réutilisé.
+ *
+ *   javac -encoding UTF-8 -d out $(find src bench -name '*.java')
+ *   java -cp out main.java.server.DispatchBench
+ */
+public final class DispatchBench {
+    private static final int ITERATIONS = 5_000_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final String[] OLD_PREFIXES = {
+            "CHAT_MESSAGE:", "FILE_UPLOAD_START:", "FILE_CHUNK:", "REQUEST_FILE_LIST", "DOWNLOAD_FILE:",
+            "REQUEST_CHUNK:", "REQUEST_USER_LIST", "END_SESSION", "AUTHENTICATE:", "REQUEST_CONTROL",
+            "RELEASE_CONTROL", "INPUT_EVENT:", "PING"
+    };
+
+    private static long sink;
+
+    private interface Dispatch {
+        long run(byte[] data);
+    }
+
+    public static void main(String[] args) {
+        byte[] inputJson = bytes("INPUT_EVENT:{\"type\":\"MOUSE_MOVE\",\"x\":100,\"y\":200,\"timestamp\":1700000000000}");
+        byte[] ping = bytes("PING");
+        byte[] requestControl = bytes("REQUEST_CONTROL");
+        byte[] chat = bytes("CHAT_MESSAGE:bonjour à tous");
+        byte[] fileChunk = bytes("FILE_CHUNK:a1b2c3d4:42:" + Base64.getEncoder().encodeToString(new byte[3072]));
+        byte[] inputBinary = new byte[1 + InputEventCodec.ENCODED_SIZE];
+        inputBinary[0] = 0x01;
+        inputBinary[1] = (byte) CustomInputEvent.EventType.MOUSE_MOVE.getCode();
+        CustomInputEvent event = new CustomInputEvent();
+
+        System.out.printf("%-22s %12s %10s %12s %10s%n", "message", "avant ns", "avant o", "table ns", "table o");
+        compare("INPUT_EVENT (JSON)", inputJson,
+                data -> {
+                    String message = new String(data, StandardCharsets.UTF_8);
+                    int index = oldIndex(message);
+                    return index + message.substring("INPUT_EVENT:".length()).length();
+                },
+                data -> {
+                    InboundMessage message = InboundMessage.parse(false, data, data.length);
+                    return message.getType().ordinal() + message.rest().length();
+                });
+        compare("INPUT_EVENT (binaire)", inputBinary,
+                data -> {
+                    // Pas de format binaire avant : même événement en JSON
+                    String message = new String(inputJson, StandardCharsets.UTF_8);
+                    int index = oldIndex(message);
+                    return index + message.substring("INPUT_EVENT:".length()).length();
+                },
+                data -> MessageType.fromOpcode(data[0]) == MessageType.INPUT_EVENT
+                        && InputEventCodec.decode(data, 1, data.length - 1, event) ? event.getX() : -1);
+        compare("PING", ping,
+                data -> oldIndex(new String(data, StandardCharsets.UTF_8)),
+                data -> InboundMessage.parse(false, data, data.length).getType().ordinal());
+        compare("REQUEST_CONTROL", requestControl,
+                data -> oldIndex(new String(data, StandardCharsets.UTF_8)),
+                data -> InboundMessage.parse(false, data, data.length).getType().ordinal());
+        compare("CHAT_MESSAGE", chat,
+                data -> {
+                    String message = new String(data, StandardCharsets.UTF_8);
+                    int index = oldIndex(message);
+                    return index + message.substring("CHAT_MESSAGE:".length()).length();
+                },
+                data -> {
+                    InboundMessage message = InboundMessage.parse(false, data, data.length);
+                    return message.getType().ordinal() + message.rest().length();
+                });
+        compare("FILE_CHUNK (3 Ko)", fileChunk,
+                data -> {
+                    String message = new String(data, StandardCharsets.UTF_8);
+                    int index = oldIndex(message);
+                    String[] parts = message.substring("FILE_CHUNK:".length()).split(":", 3);
+                    return index + parts[0].length() + Integer.parseInt(parts[1])
+                            + Base64.getDecoder().decode(parts[2]).length;
+                },
+                data -> {
+                    InboundMessage message = InboundMessage.parse(false, data, data.length);
+                    return message.getType().ordinal() + message.nextField().length() + message.nextInt()
+                            + message.restAsBase64().length;
+                });
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    // Indice de la branche prise par l'ancienne chaîne (les préfixes sans ':' étaient comparés par equals)
+    private static int oldIndex(String message) {
+        for (int i = 0; i < OLD_PREFIXES.length; i++) {
+            String prefix = OLD_PREFIXES[i];
+            if (prefix.endsWith(":") ? message.startsWith(prefix) : message.equals(prefix)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void compare(String name, byte[] data, Dispatch before, Dispatch table) {
+        // Deux tours : le premier chauffe le JIT
+        long[] beforeResult = null;
+        long[] tableResult = null;
+        for (int round = 0; round < 2; round++) {
+            beforeResult = measure(before, data);
+            tableResult = measure(table, data);
+        }
+        System.out.printf("%-22s %12.1f %10d %12.1f %10d%n", name,
+                beforeResult[0] / (double) ITERATIONS, beforeResult[1] / ITERATIONS,
+                tableResult[0] / (double) ITERATIONS, tableResult[1] / ITERATIONS);
+    }
+
+    private static long[] measure(Dispatch dispatch, byte[] data) {
+        long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += dispatch.run(data);
+        }
+        long elapsed = System.nanoTime() - start;
+        return new long[] {elapsed, THREADS.getCurrentThreadAllocatedBytes() - bytesBefore};
+    }
+
+    private static byte[] bytes(String message) {
+        return message.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,137 @@
+package main.java.server;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Coût par image de la diffusion d'écran à 1, 10 et 50 clients, mesuré sur
+ * le thread qui diffuse (temps et octets alloués) :
+ *
+ *   avant   : chaîne SCREEN_DATA construite une fois, puis pour chaque client
+ *             getBytes("UTF-8") et recopie dans une nouvelle trame
+ *   texte   : PreparedFrame SCREEN_DATA construite une fois, vues par client
+ *   binaire : trame rc-binary.v1 construite une fois, vues par client
+ *
+ * Les écritures réseau ne sont pas comptées : chaque client ne fait que
+ * parcourir les tampons qu'il enverrait.
+ *
+ *   javac -encoding UTF-8 -d out $(find src bench -name '*.java')
+ *   java -cp out main.java.server.FrameFanOutBench [octets par image, 30000 par défaut]
+ */
+public final class FrameFanOutBench {
+    private static final int[] CLIENTS = {1, 10, 50};
+    private static final int WARMUP_FRAMES = 2_000;
+    private static final int MEASURED_FRAMES = 2_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+    private interface Broadcast {
+        void run(byte[] screenData, long frameId, int clients);
+    }
+
+    public static void main(String[] args) {
+        int imageBytes = args.length > 0 ? Integer.parseInt(args[0]) : 30_000;
+        byte[] screenData = new byte[imageBytes];
+        new Random(42).nextBytes(screenData);
+
+        Broadcast[] paths = {
+                FrameFanOutBench::perClientFrames,
+                FrameFanOutBench::sharedTextFrame,
+                FrameFanOutBench::sharedBinaryFrame
+        };
+        String[] names = {"avant", "texte", "binaire"};
+
+        // Tous les chemins compilés avant la première mesure
+        for (Broadcast path : paths) {
+            for (int clients : CLIENTS) {
+                for (int i = 0; i < WARMUP_FRAMES; i++) {
+                    path.run(screenData, i, clients);
+                }
+            }
+        }
+
+        System.out.printf("Image de %d octets, %d images mesurées%n", imageBytes, MEASURED_FRAMES);
+        System.out.printf("%-8s %8s %14s %16s%n", "chemin", "clients", "us/image", "octets/image");
+        for (int clients : CLIENTS) {
+            for (int p = 0; p < paths.length; p++) {
+                measure(names[p], paths[p], screenData, clients);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void measure(String name, Broadcast broadcast, byte[] screenData, int clients) {
+        long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            broadcast.run(screenData, i, clients);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+        System.out.printf("%-8s %8d %14.1f %16d%n", name, clients,
+                elapsed / 1e3 / MEASURED_FRAMES, allocated / MEASURED_FRAMES);
+    }
+
+    // Ancien chemin : une chaîne partagée, mais un encodage UTF-8 et une trame par client
+    private static void perClientFrames(byte[] screenData, long frameId, int clients) {
+        String message = "SCREEN_DATA:" + frameId + ":" + Base64.getEncoder().encodeToString(screenData);
+        for (int c = 0; c < clients; c++) {
+            byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+            byte[] frame;
+            if (messageBytes.length < 126) {
+                frame = new byte[2 + messageBytes.length];
+                frame[0] = (byte) 0x81;
+                frame[1] = (byte) messageBytes.length;
+                System.arraycopy(messageBytes, 0, frame, 2, messageBytes.length);
+            } else if (messageBytes.length < 65536) {
+                frame = new byte[4 + messageBytes.length];
+                frame[0] = (byte) 0x81;
+                frame[1] = 126;
+                frame[2] = (byte) (messageBytes.length >> 8);
+                frame[3] = (byte) (messageBytes.length & 0xFF);
+                System.arraycopy(messageBytes, 0, frame, 4, messageBytes.length);
+            } else {
+                frame = new byte[10 + messageBytes.length];
+                frame[0] = (byte) 0x81;
+                frame[1] = 127;
+                long len = messageBytes.length;
+                for (int i = 0; i < 8; i++) {
+                    frame[9 - i] = (byte) (len & 0xFF);
+                    len >>= 8;
+                }
+                System.arraycopy(messageBytes, 0, frame, 10, messageBytes.length);
+            }
+            sink += frame[frame.length - 1];
+        }
+    }
+
+    private static void sharedTextFrame(byte[] screenData, long frameId, int clients) {
+        PreparedFrame frame = PreparedFrame.text(
+                ("SCREEN_DATA:" + frameId + ":").getBytes(StandardCharsets.US_ASCII),
+                Base64.getEncoder().encode(screenData), TrafficClass.SCREEN);
+        fanOut(frame, clients);
+    }
+
+    private static void sharedBinaryFrame(byte[] screenData, long frameId, int clients) {
+        PreparedFrame frame = ScreenFrameProtocol.prepareFrame(ScreenFrameProtocol.TYPE_FULL_FRAME,
+                ScreenFrameProtocol.CODEC_JPEG, frameId, 480, 270, screenData);
+        fanOut(frame, clients);
+    }
+
+    // Ce que fait chaque client de la trame partagée : ses propres vues, sans copie des octets
+    private static void fanOut(PreparedFrame frame, int clients) {
+        for (int c = 0; c < clients; c++) {
+            for (ByteBuffer buffer : frame.buffers()) {
+                sink += buffer.remaining();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package main.java.capture;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline capture → redimensionnement → encodage → envoi, un thread par étage.
+ *
+ * Les étages sont reliés par des emplacements d'une seule image : quand un
+ * étage aval est en retard, l'image brute en attente est remplacée par la
+ * plus récente au lieu d'être mise en file. Le débit est ainsi limité par
+ * l'étage le plus lent et non par la somme des étages.
+ *
+ * Le passage encodage → envoi est bloquant : une mise à jour par tuiles
+ * dépend de la précédente et ne doit jamais être abandonnée.
+ *
+ * Une capture identique à la précédente (pixels bruts) s'arrête dès l'étage
+ * de capture, sauf si un client attend une image clé : un bureau inactif ne
+ * coûte ni redimensionnement ni encodage.
+ */
+public class CapturePipeline {
+
+    public interface FrameListener {
+        // Consulté avant chaque capture et chaque encodage
+        FrameDemand getDemand();
+
+        // Une image par profil demandé, issues de la même capture
+        void onFrame(Map<CaptureProfile, CapturedFrame> frames);
+    }
+
+    private final ScreenCapturer capturer;
+    private final FrameListener listener;
+
+    private final LatestSlot<StageFrame<BufferedImage>> toScale = new LatestSlot<>();
+    private final LatestSlot<StageFrame<Map<CaptureProfile, BufferedImage>>> toEncode = new LatestSlot<>();
+    private final LatestSlot<Map<CaptureProfile, CapturedFrame>> toSend = new LatestSlot<>();
+
+    private final AtomicLong capturedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong unchangedFrames = new AtomicLong();
+    private final AtomicLong sentFrames = new AtomicLong();
+
+    private volatile boolean running = false;
+    private Thread[] threads;
+
+    public CapturePipeline(ScreenCapturer capturer, FrameListener listener) {
+        this.capturer = capturer;
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+
+        threads = new Thread[] {
+                new Thread(this::captureLoop, "capture-grab"),
+                new Thread(this::scaleLoop, "capture-scale"),
+                new Thread(this::encodeLoop, "capture-encode"),
+                new Thread(this::sendLoop, "capture-send")
+        };
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (threads != null) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private void captureLoop() {
+        long interval = capturer.getCaptureInterval();
+        while (running) {
+            long start = System.currentTimeMillis();
+            try {
+                FrameDemand demand = listener.getDemand();
+                if (!demand.isEmpty()) {
+                    BufferedImage screenshot = capturer.grab();
+                    capturedFrames.incrementAndGet();
+
+                    boolean changed = capturer.hasChanged(screenshot);
+                    if (changed || demand.isForceKeyframe()) {
+                        if (toScale.put(new StageFrame<>(screenshot, changed), StageFrame::merge)) {
+                            droppedFrames.incrementAndGet();
+                        }
+                    } else {
+                        unchangedFrames.incrementAndGet();
+                    }
+                }
+
+                long remaining = interval - (System.currentTimeMillis() - start);
+                if (remaining > 0) {
+                    Thread.sleep(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("❌ Erreur étage capture: " + e.getMessage());
+            }
+        }
+    }
+
+    private void scaleLoop() {
+        while (running) {
+            try {
+                StageFrame<BufferedImage> screenshot = toScale.take();
+                FrameDemand demand = listener.getDemand();
+                if (demand.isEmpty()) {
+                    continue;
+                }
+                StageFrame<Map<CaptureProfile, BufferedImage>> scaled = new StageFrame<>(
+                        capturer.scale(screenshot.payload, demand.getProfiles()), screenshot.changed);
+                if (toEncode.put(scaled, StageFrame::merge)) {
+                    droppedFrames.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("❌ Erreur étage redimensionnement: " + e.getMessage());
+            }
+        }
+    }
+
+    private void encodeLoop() {
+        while (running) {
+            try {
+                StageFrame<Map<CaptureProfile, BufferedImage>> images = toEncode.take();
+                FrameDemand demand = listener.getDemand();
+                if (demand.isEmpty()) {
+                    continue;
+                }
+
+                Map<CaptureProfile, CapturedFrame> frames = capturer.encode(images.payload, demand, images.changed);
+                if (!frames.isEmpty()) {
+                    toSend.putBlocking(frames);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("❌ Erreur étage encodage: " + e.getMessage());
+            }
+        }
+    }
+
+    private void sendLoop() {
+        while (running) {
+            try {
+                listener.onFrame(toSend.take());
+                sentFrames.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("❌ Erreur étage envoi: " + e.getMessage());
+            }
+        }
+    }
+
+    public long getCapturedFrames() { return capturedFrames.get(); }
+    public long getDroppedFrames() { return droppedFrames.get(); }
+    public long getUnchangedFrames() { return unchangedFrames.get(); }
+    public long getSentFrames() { return sentFrames.get(); }
+
+    /**
+     * Élément transmis entre étages, avec l'indicateur de changement à l'écran.
+     */
+    static final class StageFrame<T> {
+        final T payload;
+        final boolean changed;
+
+        StageFrame(T payload, boolean changed) {
+            this.payload = payload;
+            this.changed = changed;
+        }
+
+        // Une image abandonnée qui portait un changement le transmet à sa remplaçante
+        static <T> StageFrame<T> merge(StageFrame<T> dropped, StageFrame<T> latest) {
+            return dropped.changed && !latest.changed ? new StageFrame<>(latest.payload, true) : latest;
+        }
+    }
+
+    /**
+     * Emplacement de transfert d'un seul élément entre deux étages.
+     */
+    static class LatestSlot<T> {
+        private T value;
+
+        // Remplace l'élément en attente ; retourne true si un élément a été abandonné
+        synchronized boolean put(T newValue) {
+            boolean dropped = value != null;
+            value = newValue;
+            notifyAll();
+            return dropped;
+        }
+
+        // Variante de put qui combine l'élément abandonné avec le nouveau
+        synchronized boolean put(T newValue, BinaryOperator<T> merger) {
+            return put(value != null ? merger.apply(value, newValue) : newValue);
+        }
+
+        // Attend que l'emplacement soit libre (aucun abandon)
+        synchronized void putBlocking(T newValue) throws InterruptedException {
+            while (value != null) {
+                wait();
+            }
+            value = newValue;
+            notifyAll();
+        }
+
+        synchronized T take() throws InterruptedException {
+            while (value == null) {
+                wait();
+            }
+            T result = value;
+            value = null;
+            notifyAll();
+            return result;
+        }
+    }
+}
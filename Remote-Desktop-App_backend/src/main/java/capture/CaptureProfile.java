@@ -0,0 +1,45 @@
+package main.java.capture;
+
+/**
+ * Profils de résolution proposés aux clients. L'image capturée est réduite
+ * pour tenir dans la boîte du profil en conservant le rapport d'aspect ;
+ * chaque profil demandé n'est redimensionné et encodé qu'une fois par image.
+ */
+public enum CaptureProfile {
+    P270("270p", 480, 270, false),
+    P480("480p", 854, 480, false),
+    P720("720p", 1280, 720, true),
+    P1080("1080p", 1920, 1080, true),
+    NATIVE("native", Integer.MAX_VALUE, Integer.MAX_VALUE, false);
+
+    // Profil historique (480x270), conservé par défaut pour les anciens clients
+    public static final CaptureProfile DEFAULT = P270;
+
+    private final String name;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final boolean smoothScaling;
+
+    CaptureProfile(String name, int maxWidth, int maxHeight, boolean smoothScaling) {
+        this.name = name;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.smoothScaling = smoothScaling;
+    }
+
+    public static CaptureProfile fromName(String name) {
+        for (CaptureProfile profile : values()) {
+            if (profile.name.equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    public String getName() { return name; }
+    public int getMaxWidth() { return maxWidth; }
+    public int getMaxHeight() { return maxHeight; }
+
+    // Interpolation bilinéaire pour garder le petit texte lisible en haute résolution
+    public boolean isSmoothScaling() { return smoothScaling; }
+}
@@ -0,0 +1,47 @@
+package main.java.capture;
+
+import java.util.Map;
+
+/**
+ * Sorties d'une capture pour un profil : image complète par codec et
+ * niveau de qualité demandés, et/ou mise à jour par tuiles.
+ */
+public class CapturedFrame {
+    private final CaptureProfile profile;
+    private final Map<String, Map<QualityLevel, byte[]>> fullFrames;
+    private final boolean fullFrameChanged;
+    private final TileUpdate tileUpdate;
+    private final int width;
+    private final int height;
+
+    public CapturedFrame(CaptureProfile profile, Map<String, Map<QualityLevel, byte[]>> fullFrames,
+                         boolean fullFrameChanged, TileUpdate tileUpdate, int width, int height) {
+        this.profile = profile;
+        this.fullFrames = fullFrames;
+        this.fullFrameChanged = fullFrameChanged;
+        this.tileUpdate = tileUpdate;
+        this.width = width;
+        this.height = height;
+    }
+
+    public CaptureProfile getProfile() { return profile; }
+
+    // Image complète de référence (JPEG qualité par défaut), utilisée pour les images clés
+    public byte[] getFullFrame() { return getFullFrame(FrameCodecs.DEFAULT, QualityLevel.MEDIUM); }
+
+    public byte[] getFullFrame(String codec, QualityLevel quality) {
+        Map<QualityLevel, byte[]> byQuality = fullFrames.get(codec);
+        if (byQuality == null) {
+            return null;
+        }
+        if (FrameCodecs.isLossless(codec)) {
+            return byQuality.get(QualityLevel.MEDIUM);
+        }
+        return byQuality.get(quality);
+    }
+
+    public boolean isFullFrameChanged() { return fullFrameChanged; }
+    public TileUpdate getTileUpdate() { return tileUpdate; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+}
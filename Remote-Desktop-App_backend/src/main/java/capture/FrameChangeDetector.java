@@ -0,0 +1,66 @@
+package main.java.capture;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Détection de changements sur les pixels bruts, avant tout redimensionnement
+ * ou encodage. Chaque ligne est comparée à la capture précédente avec
+ * Arrays.mismatch (comparaison vectorisée par la JVM) et seules les lignes
+ * modifiées sont recopiées : un bureau inactif ne coûte qu'une lecture mémoire.
+ *
+ * Une instance n'est pas thread-safe (utilisée par l'étage de capture).
+ */
+public class FrameChangeDetector {
+    private int[] previous;
+    private int width;
+    private int height;
+    private int[] pixelBuffer;
+
+    /**
+     * @return true si au moins un pixel diffère de la capture précédente
+     */
+    public boolean hasChanged(BufferedImage image) {
+        int[] pixels = getPixels(image);
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+
+        if (previous == null || imageWidth != width || imageHeight != height) {
+            width = imageWidth;
+            height = imageHeight;
+            previous = Arrays.copyOf(pixels, width * height);
+            return true;
+        }
+
+        boolean changed = false;
+        for (int row = 0; row < height; row++) {
+            int from = row * width;
+            int to = from + width;
+            if (Arrays.mismatch(pixels, from, to, previous, from, to) >= 0) {
+                System.arraycopy(pixels, from, previous, from, width);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    public void reset() {
+        previous = null;
+    }
+
+    private int[] getPixels(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && image.getRaster().getSampleModelTranslateX() == 0
+                && image.getRaster().getSampleModelTranslateY() == 0) {
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+
+        int size = image.getWidth() * image.getHeight();
+        if (pixelBuffer == null || pixelBuffer.length != size) {
+            pixelBuffer = new int[size];
+        }
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixelBuffer, 0, image.getWidth());
+    }
+}
@@ -0,0 +1,24 @@
+package main.java.capture;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Encodeur d'images d'écran. Une instance est confinée à un seul thread
+ * (l'étage d'encodage) et peut donc réutiliser ses tampons.
+ */
+public interface FrameCodec {
+
+    // Identifiant transmis dans l'en-tête des trames binaires
+    byte getId();
+
+    // Nom utilisé pour la négociation (SET_CODEC:<nom>)
+    String getName();
+
+    String getMimeType();
+
+    // Un codec sans perte ignore le niveau de qualité
+    boolean isLossless();
+
+    byte[] encode(BufferedImage image, QualityLevel quality) throws IOException;
+}
@@ -0,0 +1,56 @@
+package main.java.capture;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jeu de codecs d'un thread d'encodage : une instance par codec, créée à
+ * la première utilisation.
+ */
+public class FrameCodecs {
+    public static final String DEFAULT = JpegFrameCodec.NAME;
+    // Noms négociables, codec par défaut en tête
+    public static final List<String> NAMES = List.of(JpegFrameCodec.NAME, PngFrameCodec.NAME, QoiFrameCodec.NAME);
+
+    private final ImageCompressor compressor;
+    private final Map<String, FrameCodec> codecs = new HashMap<>();
+
+    public FrameCodecs(ImageCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public static boolean isSupported(String name) {
+        return NAMES.contains(name);
+    }
+
+    public static boolean isLossless(String name) {
+        return PngFrameCodec.NAME.equals(name) || QoiFrameCodec.NAME.equals(name);
+    }
+
+    public static byte idOf(String name) {
+        switch (name) {
+            case PngFrameCodec.NAME:
+                return PngFrameCodec.ID;
+            case QoiFrameCodec.NAME:
+                return QoiFrameCodec.ID;
+            default:
+                return JpegFrameCodec.ID;
+        }
+    }
+
+    public FrameCodec get(String name) {
+        return codecs.computeIfAbsent(name, this::create);
+    }
+
+    private FrameCodec create(String name) {
+        switch (name) {
+            case PngFrameCodec.NAME:
+                return new PngFrameCodec();
+            case QoiFrameCodec.NAME:
+                return new QoiFrameCodec();
+            default:
+                return new JpegFrameCodec(compressor);
+        }
+    }
+}
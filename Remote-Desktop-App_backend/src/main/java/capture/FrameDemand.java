@@ -0,0 +1,70 @@
+package main.java.capture;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sorties attendues par les clients au moment de redimensionner et
+ * d'encoder une image, regroupées par profil de capture.
+ */
+public class FrameDemand {
+
+    public static class ProfileDemand {
+        // Par codec, les niveaux de qualité demandés (un seul niveau pour les codecs sans perte)
+        private final Map<String, Set<QualityLevel>> fullFrameFormats = new HashMap<>();
+        private boolean tiles = false;
+        private boolean forceKeyframe = false;
+
+        public boolean needsFullFrame() { return !fullFrameFormats.isEmpty(); }
+        public Map<String, Set<QualityLevel>> getFullFrameFormats() { return fullFrameFormats; }
+        public boolean needsTiles() { return tiles; }
+        public boolean isForceKeyframe() { return forceKeyframe; }
+    }
+
+    private final Map<CaptureProfile, ProfileDemand> profiles = new EnumMap<>(CaptureProfile.class);
+
+    public void addFullFrame(CaptureProfile profile, String codec, QualityLevel quality) {
+        addFullFrame(profile, codec, quality, false);
+    }
+
+    // forceKeyframe : le client attend une image même si l'écran n'a pas changé
+    public void addFullFrame(CaptureProfile profile, String codec, QualityLevel quality, boolean forceKeyframe) {
+        if (FrameCodecs.isLossless(codec)) {
+            quality = QualityLevel.MEDIUM;
+        }
+        ProfileDemand demand = profiles.computeIfAbsent(profile, p -> new ProfileDemand());
+        demand.fullFrameFormats.computeIfAbsent(codec, c -> EnumSet.noneOf(QualityLevel.class)).add(quality);
+        demand.forceKeyframe |= forceKeyframe;
+    }
+
+    public void addTiles(CaptureProfile profile, boolean forceKeyframe) {
+        ProfileDemand demand = profiles.computeIfAbsent(profile, p -> new ProfileDemand());
+        demand.tiles = true;
+        demand.forceKeyframe |= forceKeyframe;
+    }
+
+    public boolean isEmpty() {
+        return profiles.isEmpty();
+    }
+
+    // Vrai si au moins un profil doit être encodé même sans changement à l'écran
+    public boolean isForceKeyframe() {
+        for (ProfileDemand demand : profiles.values()) {
+            if (demand.forceKeyframe) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<CaptureProfile> getProfiles() {
+        return profiles.keySet();
+    }
+
+    public ProfileDemand getProfileDemand(CaptureProfile profile) {
+        return profiles.get(profile);
+    }
+}
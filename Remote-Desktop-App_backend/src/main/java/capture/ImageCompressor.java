@@ -2,39 +2,67 @@ package main.java.capture;
 
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
-import javax.imageio.stream.ImageOutputStream;
 import java.util.Iterator;
 
+/**
+ * Encodeur JPEG réutilisable : le writer, ses paramètres et le tampon de
+ * sortie sont créés une fois puis réutilisés d'une image à l'autre.
+ *
+ * Une instance n'est pas thread-safe et doit rester confinée à un seul
+ * thread (l'étage d'encodage du pipeline).
+ */
 public class ImageCompressor {
     private float compressionQuality = 0.7f;
 
-    public byte[] compressImage(BufferedImage image) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
-        ImageWriter writer = writers.next();
+    private ImageWriter writer;
+    private ImageWriteParam param;
+    private final ReusableImageOutputStream output = new ReusableImageOutputStream();
 
-        ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
-        writer.setOutput(ios);
+    public byte[] compressImage(BufferedImage image) throws IOException {
+        return compressImage(image, compressionQuality);
+    }
 
-        ImageWriteParam param = writer.getDefaultWriteParam();
-        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-        param.setCompressionQuality(0.50f);
+    public byte[] compressImage(BufferedImage image, float quality) throws IOException {
+        if (writer == null) {
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
+            writer = writers.next();
+            param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        }
 
-        writer.write(null, new javax.imageio.IIOImage(image, null, null), param);
+        param.setCompressionQuality(quality);
+        output.rewind();
 
-        writer.dispose();
-        ios.close();
+        try {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException | RuntimeException e) {
+            // Un writer en erreur est recréé à l'image suivante
+            dispose();
+            throw e;
+        }
 
-        return baos.toByteArray();
+        return output.toByteArray();
     }
 
     public void setCompressionQuality(float quality) {
         this.compressionQuality = Math.max(0.0f, Math.min(1.0f, quality));
     }
+
+    public float getCompressionQuality() {
+        return compressionQuality;
+    }
+
+    public void dispose() {
+        if (writer != null) {
+            writer.dispose();
+            writer = null;
+            param = null;
+        }
+    }
 }
@@ -0,0 +1,35 @@
+package main.java.capture;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Codec avec perte, adapté aux contenus photographiques et vidéo.
+ */
+public class JpegFrameCodec implements FrameCodec {
+    public static final String NAME = "jpeg";
+    public static final byte ID = 0x01;
+
+    private final ImageCompressor compressor;
+
+    public JpegFrameCodec(ImageCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    @Override
+    public byte getId() { return ID; }
+
+    @Override
+    public String getName() { return NAME; }
+
+    @Override
+    public String getMimeType() { return "image/jpeg"; }
+
+    @Override
+    public boolean isLossless() { return false; }
+
+    @Override
+    public byte[] encode(BufferedImage image, QualityLevel quality) throws IOException {
+        return compressor.compressImage(image, quality.getJpegQuality());
+    }
+}
@@ -0,0 +1,49 @@
+package main.java.capture;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+
+/**
+ * Codec sans perte décodé nativement par les navigateurs. Plus lent que
+ * QOI à l'encodage mais ne demande aucun décodeur côté client.
+ */
+public class PngFrameCodec implements FrameCodec {
+    public static final String NAME = "png";
+    public static final byte ID = 0x02;
+
+    private ImageWriter writer;
+    private final ReusableImageOutputStream output = new ReusableImageOutputStream();
+
+    @Override
+    public byte getId() { return ID; }
+
+    @Override
+    public String getName() { return NAME; }
+
+    @Override
+    public String getMimeType() { return "image/png"; }
+
+    @Override
+    public boolean isLossless() { return true; }
+
+    @Override
+    public byte[] encode(BufferedImage image, QualityLevel quality) throws IOException {
+        if (writer == null) {
+            writer = ImageIO.getImageWritersByFormatName("png").next();
+        }
+
+        output.rewind();
+        try {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), writer.getDefaultWriteParam());
+        } catch (IOException | RuntimeException e) {
+            writer.dispose();
+            writer = null;
+            throw e;
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,147 @@
+package main.java.capture;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Codec sans perte au format QOI (https://qoiformat.org), en Java pur.
+ *
+ * Très rapide sur les interfaces à aplats de couleur (IDE, terminal) :
+ * les suites de pixels identiques et les petites variations de couleur
+ * tiennent sur un ou deux octets, sans artefacts sur le texte.
+ */
+public class QoiFrameCodec implements FrameCodec {
+    public static final String NAME = "qoi";
+    public static final byte ID = 0x03;
+
+    private static final int OP_INDEX = 0x00;
+    private static final int OP_DIFF = 0x40;
+    private static final int OP_LUMA = 0x80;
+    private static final int OP_RUN = 0xC0;
+    private static final int OP_RGB = 0xFE;
+    private static final int HEADER_SIZE = 14;
+    private static final int END_MARKER_SIZE = 8;
+
+    private final int[] index = new int[64];
+    private byte[] buffer = new byte[0];
+    private int[] pixelBuffer;
+
+    @Override
+    public byte getId() { return ID; }
+
+    @Override
+    public String getName() { return NAME; }
+
+    @Override
+    public String getMimeType() { return "image/qoi"; }
+
+    @Override
+    public boolean isLossless() { return true; }
+
+    @Override
+    public byte[] encode(BufferedImage image, QualityLevel quality) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = getPixels(image);
+        int pixelCount = width * height;
+
+        int maxSize = HEADER_SIZE + pixelCount * 4 + END_MARKER_SIZE;
+        if (buffer.length < maxSize) {
+            buffer = new byte[maxSize];
+        }
+        byte[] out = buffer;
+        int pos = 0;
+
+        out[pos++] = 'q';
+        out[pos++] = 'o';
+        out[pos++] = 'i';
+        out[pos++] = 'f';
+        pos = writeInt(out, pos, width);
+        pos = writeInt(out, pos, height);
+        out[pos++] = 3; // RGB
+        out[pos++] = 0; // sRGB
+
+        Arrays.fill(index, 0);
+        int previous = 0xFF000000;
+        int run = 0;
+
+        for (int i = 0; i < pixelCount; i++) {
+            int pixel = pixels[i] | 0xFF000000;
+
+            if (pixel == previous) {
+                run++;
+                if (run == 62 || i == pixelCount - 1) {
+                    out[pos++] = (byte) (OP_RUN | (run - 1));
+                    run = 0;
+                }
+                continue;
+            }
+
+            if (run > 0) {
+                out[pos++] = (byte) (OP_RUN | (run - 1));
+                run = 0;
+            }
+
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            int hash = (r * 3 + g * 5 + b * 7 + 255 * 11) & 63;
+
+            if (index[hash] == pixel) {
+                out[pos++] = (byte) (OP_INDEX | hash);
+            } else {
+                index[hash] = pixel;
+
+                int dr = (byte) (r - ((previous >> 16) & 0xFF));
+                int dg = (byte) (g - ((previous >> 8) & 0xFF));
+                int db = (byte) (b - (previous & 0xFF));
+                int drDg = dr - dg;
+                int dbDg = db - dg;
+
+                if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1) {
+                    out[pos++] = (byte) (OP_DIFF | ((dr + 2) << 4) | ((dg + 2) << 2) | (db + 2));
+                } else if (dg >= -32 && dg <= 31 && drDg >= -8 && drDg <= 7 && dbDg >= -8 && dbDg <= 7) {
+                    out[pos++] = (byte) (OP_LUMA | (dg + 32));
+                    out[pos++] = (byte) (((drDg + 8) << 4) | (dbDg + 8));
+                } else {
+                    out[pos++] = (byte) OP_RGB;
+                    out[pos++] = (byte) r;
+                    out[pos++] = (byte) g;
+                    out[pos++] = (byte) b;
+                }
+            }
+            previous = pixel;
+        }
+
+        for (int i = 0; i < END_MARKER_SIZE - 1; i++) {
+            out[pos++] = 0;
+        }
+        out[pos++] = 1;
+
+        return Arrays.copyOf(out, pos);
+    }
+
+    private static int writeInt(byte[] out, int pos, int value) {
+        out[pos++] = (byte) (value >>> 24);
+        out[pos++] = (byte) (value >>> 16);
+        out[pos++] = (byte) (value >>> 8);
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private int[] getPixels(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && image.getRaster().getSampleModelTranslateX() == 0
+                && image.getRaster().getSampleModelTranslateY() == 0) {
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+
+        int size = image.getWidth() * image.getHeight();
+        if (pixelBuffer == null || pixelBuffer.length != size) {
+            pixelBuffer = new int[size];
+        }
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixelBuffer, 0, image.getWidth());
+    }
+}
@@ -0,0 +1,29 @@
+package main.java.capture;
+
+/**
+ * Niveaux de qualité JPEG proposés aux clients. Chaque niveau demandé par
+ * au moins un client est encodé une seule fois par image.
+ */
+public enum QualityLevel {
+    LOW(0.35f),
+    MEDIUM(0.50f),
+    HIGH(0.75f);
+
+    private final float jpegQuality;
+
+    QualityLevel(float jpegQuality) {
+        this.jpegQuality = jpegQuality;
+    }
+
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public QualityLevel lower() {
+        return this == HIGH ? MEDIUM : LOW;
+    }
+
+    public QualityLevel higher() {
+        return this == LOW ? MEDIUM : HIGH;
+    }
+}
@@ -0,0 +1,72 @@
+package main.java.capture;
+
+import java.io.IOException;
+import java.util.Arrays;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * Flux de sortie ImageIO en mémoire dont le tableau ne fait que grandir :
+ * après quelques images il a atteint sa taille de croisière et plus
+ * aucune allocation n'est faite pendant l'encodage.
+ */
+class ReusableImageOutputStream extends ImageOutputStreamImpl {
+    private byte[] buffer = new byte[64 * 1024];
+    private int length = 0;
+
+    void rewind() {
+        streamPos = 0;
+        flushedPos = 0;
+        bitOffset = 0;
+        length = 0;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void ensureCapacity(long required) {
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, (int) Math.max(required, buffer.length * 2L));
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        flushBits();
+        ensureCapacity(streamPos + 1);
+        buffer[(int) streamPos++] = (byte) b;
+        length = (int) Math.max(length, streamPos);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        flushBits();
+        ensureCapacity(streamPos + len);
+        System.arraycopy(b, off, buffer, (int) streamPos, len);
+        streamPos += len;
+        length = (int) Math.max(length, streamPos);
+    }
+
+    @Override
+    public int read() throws IOException {
+        bitOffset = 0;
+        return streamPos < length ? buffer[(int) streamPos++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        bitOffset = 0;
+        if (streamPos >= length) {
+            return -1;
+        }
+        int count = (int) Math.min(len, length - streamPos);
+        System.arraycopy(buffer, (int) streamPos, b, off, count);
+        streamPos += count;
+        return count;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+}
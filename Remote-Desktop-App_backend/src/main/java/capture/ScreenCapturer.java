@@ -2,30 +2,40 @@ package main.java.capture;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import javax.imageio.ImageIO;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 public class ScreenCapturer {
     private Robot robot;
-    private Rectangle screenBounds;
+    private volatile Rectangle screenBounds;
     private ImageCompressor compressor;
-    private AtomicReference<BufferedImage> lastCapture = new AtomicReference<>();
-    private volatile boolean isCapturing = false;
-    private byte[] lastImageData = null;
-    private long lastCaptureTime = 0;
-    private static final long MIN_CAPTURE_INTERVAL = 100; // OPTIMISÉ: 10 FPS
-    private int changeDetectionSamples = 50; // Réduire les échantillons
+    private FrameCodecs codecs;
+    private static final long MIN_CAPTURE_INTERVAL = 33; // 30 FPS max, chaque client est ensuite cadencé individuellement
+
+    // État de détection de changements propre à chaque profil (confiné à l'étage d'encodage)
+    private final Map<CaptureProfile, ProfileState> profileStates = new EnumMap<>(CaptureProfile.class);
+
+    // Comparaison des pixels bruts, avant redimensionnement (confinée à l'étage de capture)
+    private final FrameChangeDetector changeDetector = new FrameChangeDetector();
+
+    private class ProfileState {
+        final TileEncoder tileEncoder = new TileEncoder(compressor);
+    }
 
     public ScreenCapturer() {
         try {
             this.robot = new Robot();
             this.robot.setAutoDelay(0);
             this.robot.setAutoWaitForIdle(false);
-            this.screenBounds = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+            this.screenBounds = getPrimaryScreenBounds();
             this.compressor = new ImageCompressor();
             this.compressor.setCompressionQuality(0.60f); // RÉDUIT pour vitesse
+            this.codecs = new FrameCodecs(compressor);
 
             System.out.println("📹 ScreenCapturer ultra-rapide initialisé");
         } catch (AWTException e) {
@@ -33,77 +43,112 @@ public class ScreenCapturer {
         }
     }
 
-    public synchronized byte[] captureScreen() throws IOException {
-        long currentTime = System.currentTimeMillis();
+    // ── Étages individuels, utilisés par CapturePipeline sur des threads distincts ──
+
+    public BufferedImage grab() {
+        return robot.createScreenCapture(screenBounds);
+    }
 
-        // Limitation stricte
-        if (currentTime - lastCaptureTime < MIN_CAPTURE_INTERVAL) {
-            return lastImageData;
+    // Vrai si un pixel de la capture brute diffère de la précédente : sinon rien n'est redimensionné ni encodé
+    public boolean hasChanged(BufferedImage screenshot) {
+        synchronized (changeDetector) {
+            return changeDetector.hasChanged(screenshot);
         }
+    }
 
-        if (isCapturing) {
-            return lastImageData;
+    // Un redimensionnement par profil demandé ; les profils sans réduction partagent l'original
+    public Map<CaptureProfile, BufferedImage> scale(BufferedImage screenshot, Set<CaptureProfile> profiles) {
+        Map<CaptureProfile, BufferedImage> scaled = new EnumMap<>(CaptureProfile.class);
+        for (CaptureProfile profile : profiles) {
+            scaled.put(profile, scale(screenshot, profile));
         }
+        return scaled;
+    }
 
-        isCapturing = true;
-        try {
-            BufferedImage screenshot = robot.createScreenCapture(screenBounds);
-            BufferedImage optimized = optimizeImageFast(screenshot);
-
-            byte[] compressedData = compressor.compressImage(optimized);
-
-            // Détection de changements ultra-rapide
-            if (hasQuickChange(compressedData)) {
-                lastImageData = compressedData;
-                lastCaptureTime = currentTime;
-                return compressedData;
-            } else {
-                return lastImageData;
-            }
+    public BufferedImage scale(BufferedImage screenshot, CaptureProfile profile) {
+        return optimizeImageFast(screenshot, profile);
+    }
 
-        } finally {
-            isCapturing = false;
+    // Seul l'étage d'encodage touche à l'état des encodeurs par tuiles.
+    // Sans changement à l'écran, seuls les profils dont un client attend une image clé sont encodés.
+    public synchronized Map<CaptureProfile, CapturedFrame> encode(Map<CaptureProfile, BufferedImage> images,
+                                                                  FrameDemand demand,
+                                                                  boolean changed) throws IOException {
+        Map<CaptureProfile, CapturedFrame> frames = new EnumMap<>(CaptureProfile.class);
+        for (Map.Entry<CaptureProfile, BufferedImage> entry : images.entrySet()) {
+            FrameDemand.ProfileDemand profileDemand = demand.getProfileDemand(entry.getKey());
+            if (profileDemand != null && (changed || profileDemand.isForceKeyframe())) {
+                frames.put(entry.getKey(), encode(entry.getKey(), entry.getValue(), profileDemand, changed));
+            }
         }
+        return frames;
     }
 
-    private boolean hasQuickChange(byte[] newData) {
-        if (lastImageData == null) return true;
+    private CapturedFrame encode(CaptureProfile profile, BufferedImage optimized,
+                                 FrameDemand.ProfileDemand demand, boolean changed) throws IOException {
+        ProfileState state = getState(profile);
+
+        TileUpdate tileUpdate = null;
+        if (demand.needsTiles()) {
+            tileUpdate = state.tileEncoder.encode(optimized, demand.isForceKeyframe());
+        }
+
+        Map<String, Set<QualityLevel>> formats = new TreeMap<>();
+        for (Map.Entry<String, Set<QualityLevel>> entry : demand.getFullFrameFormats().entrySet()) {
+            formats.put(entry.getKey(), EnumSet.copyOf(entry.getValue()));
+        }
+        if (tileUpdate != null && tileUpdate.isKeyframe()) {
+            formats.computeIfAbsent(FrameCodecs.DEFAULT, c -> EnumSet.noneOf(QualityLevel.class))
+                    .add(QualityLevel.MEDIUM);
+        }
 
-        // Comparaison ultra-rapide (seulement 10 échantillons)
-        int step = Math.max(1, Math.min(newData.length, lastImageData.length) / 10);
-        for (int i = 0; i < Math.min(newData.length, lastImageData.length); i += step) {
-            if (newData[i] != lastImageData[i]) {
-                return true;
+        // Un seul encodage par codec et niveau de qualité, partagé par tous les clients concernés
+        Map<String, Map<QualityLevel, byte[]>> fullFrames = new HashMap<>();
+        for (Map.Entry<String, Set<QualityLevel>> entry : formats.entrySet()) {
+            FrameCodec codec = codecs.get(entry.getKey());
+            Map<QualityLevel, byte[]> byQuality = new EnumMap<>(QualityLevel.class);
+            for (QualityLevel quality : entry.getValue()) {
+                byQuality.put(quality, codec.encode(optimized, quality));
             }
+            fullFrames.put(entry.getKey(), byQuality);
         }
-        return false;
+
+        return new CapturedFrame(profile, fullFrames, changed, tileUpdate,
+                optimized.getWidth(), optimized.getHeight());
+    }
+
+    private ProfileState getState(CaptureProfile profile) {
+        return profileStates.computeIfAbsent(profile, p -> new ProfileState());
     }
 
-    private BufferedImage optimizeImageFast(BufferedImage original) {
-        // Résolution encore plus réduite pour vitesse maximale
-        int maxWidth = 480;  // TRÈS RÉDUIT
-        int maxHeight = 270; // TRÈS RÉDUIT
+    public long getCaptureInterval() {
+        return MIN_CAPTURE_INTERVAL;
+    }
 
-        double scaleX = (double) maxWidth / original.getWidth();
-        double scaleY = (double) maxHeight / original.getHeight();
+    private BufferedImage optimizeImageFast(BufferedImage original, CaptureProfile profile) {
+        double scaleX = (double) profile.getMaxWidth() / original.getWidth();
+        double scaleY = (double) profile.getMaxHeight() / original.getHeight();
         double scale = Math.min(scaleX, scaleY);
 
         if (scale >= 1.0) {
             return original;
         }
 
-        int newWidth = (int) (original.getWidth() * scale);
-        int newHeight = (int) (original.getHeight() * scale);
+        int newWidth = Math.max(1, (int) (original.getWidth() * scale));
+        int newHeight = Math.max(1, (int) (original.getHeight() * scale));
 
-        return resizeImageUltraFast(original, newWidth, newHeight);
+        return resizeImageUltraFast(original, newWidth, newHeight, profile.isSmoothScaling());
     }
 
-    private BufferedImage resizeImageUltraFast(BufferedImage original, int targetWidth, int targetHeight) {
+    private BufferedImage resizeImageUltraFast(BufferedImage original, int targetWidth, int targetHeight,
+                                               boolean smooth) {
         BufferedImage resized = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = resized.createGraphics();
 
         // Configuration pour vitesse maximale
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, smooth
+                ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
         g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
         g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
         g2d.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED);
@@ -115,9 +160,61 @@ public class ScreenCapturer {
         return resized;
     }
 
-    public void clearCache() {
-        lastCapture.set(null);
-        lastImageData = null;
+    // ── Source de capture : écran principal, moniteur choisi ou sous-rectangle ──
+
+    public static Rectangle[] getMonitorBounds() {
+        GraphicsDevice[] devices = GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices();
+        Rectangle[] bounds = new Rectangle[devices.length];
+        for (int i = 0; i < devices.length; i++) {
+            bounds[i] = devices[i].getDefaultConfiguration().getBounds();
+        }
+        return bounds;
+    }
+
+    public boolean selectMonitor(int index) {
+        Rectangle[] monitors = getMonitorBounds();
+        if (index < 0 || index >= monitors.length) {
+            return false;
+        }
+        setCaptureRegion(monitors[index]);
+        return true;
+    }
+
+    // La région est bornée au bureau virtuel (union de tous les moniteurs)
+    public boolean setCaptureRegion(Rectangle region) {
+        Rectangle desktop = new Rectangle();
+        for (Rectangle monitor : getMonitorBounds()) {
+            desktop = desktop.isEmpty() ? new Rectangle(monitor) : desktop.union(monitor);
+        }
+        Rectangle clipped = region.intersection(desktop);
+        if (clipped.isEmpty()) {
+            return false;
+        }
+        screenBounds = clipped;
+        clearCache();
+        return true;
+    }
+
+    public void resetCaptureRegion() {
+        screenBounds = getPrimaryScreenBounds();
+        clearCache();
+    }
+
+    public Rectangle getCaptureRegion() {
+        return new Rectangle(screenBounds);
+    }
+
+    private static Rectangle getPrimaryScreenBounds() {
+        return new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+    }
+
+    public synchronized void clearCache() {
+        synchronized (changeDetector) {
+            changeDetector.reset();
+        }
+        for (ProfileState state : profileStates.values()) {
+            state.tileEncoder.reset();
+        }
     }
 
     public Dimension getScreenSize() {
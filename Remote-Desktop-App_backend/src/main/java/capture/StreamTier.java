@@ -0,0 +1,36 @@
+package main.java.capture;
+
+/**
+ * Paliers de diffusion (simulcast) : un jeu fixe de couples profil/qualité
+ * auxquels les clients s'abonnent. Chaque palier ayant au moins un abonné
+ * est encodé une fois par image et partagé par tous ses abonnés ; le nombre
+ * d'encodages reste borné quel que soit le nombre de spectateurs.
+ */
+public enum StreamTier {
+    LOW("low", CaptureProfile.P270, QualityLevel.LOW),
+    MEDIUM("medium", CaptureProfile.P480, QualityLevel.MEDIUM),
+    HIGH("high", CaptureProfile.P720, QualityLevel.HIGH);
+
+    private final String name;
+    private final CaptureProfile profile;
+    private final QualityLevel quality;
+
+    StreamTier(String name, CaptureProfile profile, QualityLevel quality) {
+        this.name = name;
+        this.profile = profile;
+        this.quality = quality;
+    }
+
+    public static StreamTier fromName(String name) {
+        for (StreamTier tier : values()) {
+            if (tier.name.equalsIgnoreCase(name)) {
+                return tier;
+            }
+        }
+        return null;
+    }
+
+    public String getName() { return name; }
+    public CaptureProfile getProfile() { return profile; }
+    public QualityLevel getQuality() { return quality; }
+}
@@ -0,0 +1,135 @@
+package main.java.capture;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodage par régions modifiées : l'image est découpée en tuiles fixes,
+ * chaque tuile est comparée ligne à ligne aux pixels bruts de l'image
+ * précédente (Arrays.mismatch, comme FrameChangeDetector) et seules les
+ * tuiles modifiées sont recompressées. La comparaison est exacte : aucune
+ * modification ne peut passer inaperçue, contrairement à un hachage.
+ *
+ * Une image clé est demandée périodiquement, au changement de résolution,
+ * ou quand trop de tuiles ont changé pour que l'envoi partiel soit rentable.
+ */
+public class TileEncoder {
+    public static final int DEFAULT_TILE_SIZE = 64;
+    private static final int KEYFRAME_INTERVAL = 100; // ~10 s à 10 FPS
+    private static final double KEYFRAME_CHANGE_RATIO = 0.5;
+
+    private final int tileSize;
+    private final ImageCompressor compressor;
+
+    private int[] previous; // pixels de l'image précédente, tuiles modifiées recopiées au fil de l'eau
+    private int columns;
+    private int rows;
+    private int width;
+    private int height;
+    private int updatesSinceKeyframe = 0;
+    private int[] pixelBuffer;
+
+    public TileEncoder(ImageCompressor compressor) {
+        this(compressor, DEFAULT_TILE_SIZE);
+    }
+
+    public TileEncoder(ImageCompressor compressor, int tileSize) {
+        this.compressor = compressor;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @return null si aucune tuile n'a changé, une image clé, ou les tuiles modifiées
+     */
+    public TileUpdate encode(BufferedImage image, boolean forceKeyframe) throws IOException {
+        int[] pixels = getPixels(image);
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+
+        boolean resized = previous == null || imageWidth != width || imageHeight != height;
+        if (resized) {
+            width = imageWidth;
+            height = imageHeight;
+            columns = (width + tileSize - 1) / tileSize;
+            rows = (height + tileSize - 1) / tileSize;
+            previous = Arrays.copyOf(pixels, width * height);
+        }
+
+        List<Integer> changed = new ArrayList<>();
+        if (!resized) {
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < columns; col++) {
+                    if (updateTile(pixels, col * tileSize, row * tileSize)) {
+                        changed.add(row * columns + col);
+                    }
+                }
+            }
+        }
+
+        updatesSinceKeyframe++;
+        if (forceKeyframe || resized || updatesSinceKeyframe >= KEYFRAME_INTERVAL
+                || changed.size() > columns * rows * KEYFRAME_CHANGE_RATIO) {
+            updatesSinceKeyframe = 0;
+            return new TileUpdate(true, Collections.emptyList());
+        }
+
+        if (changed.isEmpty()) {
+            return null;
+        }
+
+        List<TileUpdate.Tile> tiles = new ArrayList<>(changed.size());
+        for (int index : changed) {
+            int x = (index % columns) * tileSize;
+            int y = (index / columns) * tileSize;
+            int w = Math.min(tileSize, width - x);
+            int h = Math.min(tileSize, height - y);
+            byte[] data = compressor.compressImage(image.getSubimage(x, y, w, h));
+            tiles.add(new TileUpdate.Tile(x, y, w, h, data));
+        }
+        return new TileUpdate(false, tiles);
+    }
+
+    public void reset() {
+        previous = null;
+        updatesSinceKeyframe = 0;
+    }
+
+    // Compare la tuile à l'image précédente et la recopie si elle a changé
+    private boolean updateTile(int[] pixels, int startX, int startY) {
+        int tileWidth = Math.min(tileSize, width - startX);
+        int endY = Math.min(startY + tileSize, height);
+        for (int y = startY; y < endY; y++) {
+            int from = y * width + startX;
+            int to = from + tileWidth;
+            if (Arrays.mismatch(pixels, from, to, previous, from, to) >= 0) {
+                // Les lignes précédentes sont identiques : seules celles à partir d'ici sont recopiées
+                for (int copyY = y; copyY < endY; copyY++) {
+                    int offset = copyY * width + startX;
+                    System.arraycopy(pixels, offset, previous, offset, tileWidth);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int[] getPixels(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && image.getRaster().getSampleModelTranslateX() == 0
+                && image.getRaster().getSampleModelTranslateY() == 0) {
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+
+        int size = image.getWidth() * image.getHeight();
+        if (pixelBuffer == null || pixelBuffer.length != size) {
+            pixelBuffer = new int[size];
+        }
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixelBuffer, 0, image.getWidth());
+    }
+}
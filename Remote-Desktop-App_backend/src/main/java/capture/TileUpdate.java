@@ -0,0 +1,44 @@
+package main.java.capture;
+
+import java.util.List;
+
+/**
+ * Résultat de l'encodage par tuiles d'une capture : soit une image clé
+ * (l'appelant envoie l'image complète), soit la liste des tuiles modifiées.
+ */
+public class TileUpdate {
+    private final boolean keyframe;
+    private final List<Tile> tiles;
+
+    public TileUpdate(boolean keyframe, List<Tile> tiles) {
+        this.keyframe = keyframe;
+        this.tiles = tiles;
+    }
+
+    public static class Tile {
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+        public final byte[] data;
+
+        public Tile(int x, int y, int width, int height, byte[] data) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+    }
+
+    public boolean isKeyframe() { return keyframe; }
+    public List<Tile> getTiles() { return tiles; }
+
+    public int getEncodedSize() {
+        int size = 0;
+        for (Tile tile : tiles) {
+            size += tile.data.length;
+        }
+        return size;
+    }
+}
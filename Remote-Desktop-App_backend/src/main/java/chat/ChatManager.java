@@ -2,6 +2,8 @@ package main.java.chat;
 
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import main.java.server.PreparedFrame;
+import main.java.server.TrafficClass;
 import main.java.server.WebSocketClientHandler;
 
 public class ChatManager {
@@ -48,21 +50,21 @@ public class ChatManager {
     }
 
     public void broadcastMessage(ChatMessage message, List<WebSocketClientHandler> clients) {
-        String messageJson = "CHAT_MESSAGE:" + message.toJson();
+        PreparedFrame messageJson = PreparedFrame.text("CHAT_MESSAGE:" + message.toJson(), TrafficClass.CHAT);
 
-        clients.parallelStream().forEach(client -> {
+        for (WebSocketClientHandler client : clients) {
             try {
-                client.sendMessage(messageJson);
+                client.sendPrepared(messageJson);
             } catch (Exception e) {
                 // Ignorer les erreurs d'envoi
             }
-        });
+        }
     }
 
     public void broadcastChatHistory(WebSocketClientHandler newClient) {
         String historyJson = "CHAT_HISTORY:" + getChatHistoryJson();
         try {
-            newClient.sendMessage(historyJson);
+            newClient.sendMessage(historyJson, TrafficClass.CHAT);
         } catch (Exception e) {
             System.err.println("Erreur envoi historique chat: " + e.getMessage());
         }
@@ -3,230 +3,340 @@ package main.java.control;
 import java.awt.*;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
-
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service d'injection des entrées, unique pour tout le serveur.
+ *
+ * Un seul Robot, piloté par un seul thread : les événements du contrôleur
+ * sont mis en file et injectés dans l'ordre. Quand la file prend du retard
+ * (glisser rapide), les MOUSE_MOVE consécutifs sont fusionnés en la dernière
+ * position. Les délais d'un clic ou d'une touche sont programmés sur ce
+ * thread au lieu d'être dormis : l'appelant ne bloque jamais.
+ *
+ * La file est un anneau d'événements préalloués : un événement soumis y est
+ * recopié, sans allocation par déplacement de souris. Si l'anneau est plein
+ * derrière un événement qui n'est pas un déplacement, le dernier déplacement
+ * attend dans un emplacement à part, remplacé par chaque suivant, et prend la
+ * première place libérée : la position finale n'est jamais perdue.
+ */
 public class ControlExecutor {
+    private static final int QUEUE_CAPACITY = 1024;
+    // Délais entre déplacement, appui et relâchement (ms)
+    private static final long CLICK_MOVE_DELAY_MS = 10;
+    private static final long PRESS_DURATION_MS = 50;
+
     private Robot robot;
     private boolean debugMode = true;
+    // Bureau virtuel (union des moniteurs) : les positions reçues sont déjà absolues
+    private final Rectangle desktop;
+
+    // Anneau protégé par son propre verrou : head = prochain à injecter, size = événements en attente
+    private final CustomInputEvent[] ring = new CustomInputEvent[QUEUE_CAPACITY];
+    private int head = 0;
+    private int size = 0;
+    // Déplacement le plus récent en attente d'une place ; seulement quand l'anneau est plein
+    private final CustomInputEvent pendingMove = new CustomInputEvent();
+    private boolean hasPendingMove = false;
+    private final ScheduledExecutorService injector;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicLong coalescedMoves = new AtomicLong();
+
+    // Confinés au thread d'injection : événement en cours, étape suivante d'une séquence et son délai
+    private final CustomInputEvent current = new CustomInputEvent();
+    private boolean paused = false;
+    private Runnable continuation;
+    private long continuationDelayMs;
 
     public ControlExecutor() {
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new CustomInputEvent();
+        }
         try {
             this.robot = new Robot();
-            robot.setAutoDelay(5);
+            // Aucune pause implicite après chaque action : les délais utiles sont programmés
+            robot.setAutoDelay(0);
             robot.setAutoWaitForIdle(false);
+            this.desktop = getDesktopBounds();
+            this.injector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "rc-input");
+                thread.setDaemon(true);
+                return thread;
+            });
             System.out.println("🎮 ControlExecutor initialisé avec debug");
         } catch (AWTException e) {
             throw new RuntimeException("Impossible d'initialiser Robot pour le contrôle", e);
         }
     }
 
-    public void executeInputEvent(String eventJson) {
-        try {
-            String type = extractJsonValue(eventJson, "type");
+    /**
+     * Met l'événement en file et rend la main sans attendre l'injection.
+     * L'événement est recopié : l'appelant peut le réutiliser aussitôt.
+     */
+    public void submit(CustomInputEvent event) {
+        enqueue(event, true);
+    }
 
-            if (debugMode) {
-                System.out.println("🎯 Événement reçu: " + type);
+    /**
+     * Comme submit(), sans jamais attendre : false si la file est pleine,
+     * l'événement n'est alors pas recopié (à resoumettre hors du thread appelant).
+     */
+    public boolean offer(CustomInputEvent event) {
+        return enqueue(event, false);
+    }
+
+    private boolean enqueue(CustomInputEvent event, boolean wait) {
+        boolean move = event.getType() == CustomInputEvent.EventType.MOUSE_MOVE;
+        synchronized (ring) {
+            if (move && hasPendingMove) {
+                // Anneau toujours plein : le déplacement en attente est remplacé par le plus récent
+                pendingMove.copyFrom(event);
+                coalescedMoves.incrementAndGet();
+            } else if (move && size > 0 && ring[(head + size - 1) % ring.length].getType() == CustomInputEvent.EventType.MOUSE_MOVE) {
+                // Déplacement précédent pas encore injecté : seule la dernière position compte
+                ring[(head + size - 1) % ring.length].copyFrom(event);
+                coalescedMoves.incrementAndGet();
+            } else if (move && size == ring.length) {
+                // Plein derrière un clic ou une touche : mis de côté jusqu'à la prochaine place libre
+                pendingMove.copyFrom(event);
+                hasPendingMove = true;
+            } else {
+                while (size == ring.length) {
+                    if (!wait) {
+                        return false;
+                    }
+                    try {
+                        ring.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return true;
+                    }
+                }
+                ring[(head + size) % ring.length].copyFrom(event);
+                size++;
             }
+        }
+        if (drainScheduled.compareAndSet(false, true)) {
+            injector.execute(this::drain);
+        }
+        return true;
+    }
 
-            switch (type) {
-                case "MOUSE_MOVE":
-                    int x = Integer.parseInt(extractJsonValue(eventJson, "x"));
-                    int y = Integer.parseInt(extractJsonValue(eventJson, "y"));
+    public long getCoalescedMoves() {
+        return coalescedMoves.get();
+    }
 
-                    if (isValidCoordinate(x, y)) {
-                        robot.mouseMove(x, y);
-                        if (debugMode) {
-                            System.out.println("🖱️ Souris déplacée à: " + x + ", " + y);
-                        }
-                    }
-                    break;
+    public void shutdown() {
+        injector.shutdownNow();
+    }
 
-                // ✅ MODIFICATION : Simplifier la gestion des clics
-                case "MOUSE_CLICK":
-                    int clickX = Integer.parseInt(extractJsonValue(eventJson, "x"));
-                    int clickY = Integer.parseInt(extractJsonValue(eventJson, "y"));
-                    int button = Integer.parseInt(extractJsonValue(eventJson, "button"));
+    // ── Thread d'injection ──
 
-                    if (isValidCoordinate(clickX, clickY)) {
-                        robot.mouseMove(clickX, clickY);
-                        Thread.sleep(10);
+    private void drain() {
+        drainScheduled.set(false);
+        while (!paused && nextEvent(current)) {
+            try {
+                inject(current);
+            } catch (RuntimeException e) {
+                System.err.println("❌ Erreur lors de l'exécution de l'événement: " + e.getMessage());
+                e.printStackTrace();
+            }
+            scheduleContinuation();
+        }
+    }
 
-                        int mouseButton = getMouseButton(button);
-                        robot.mousePress(mouseButton);
-                        Thread.sleep(50);
-                        robot.mouseRelease(mouseButton);
+    private boolean nextEvent(CustomInputEvent into) {
+        synchronized (ring) {
+            if (size == 0) {
+                return false;
+            }
+            into.copyFrom(ring[head]);
+            head = (head + 1) % ring.length;
+            size--;
+            if (hasPendingMove) {
+                // La place libérée revient au déplacement mis de côté, plus ancien que tout appelant en attente
+                ring[(head + size) % ring.length].copyFrom(pendingMove);
+                size++;
+                hasPendingMove = false;
+            } else if (size == ring.length - 1) {
+                ring.notifyAll();
+            }
+            return true;
+        }
+    }
 
-                        // ✅ SUPPRIMÉ : La simulation de champ qui causait le double-clic
-                        // simulateFieldActivation(clickX, clickY);
+    // La suite d'une séquence part après son délai ; les événements suivants attendent leur tour
+    private void later(long delayMs, Runnable step) {
+        continuationDelayMs = delayMs;
+        continuation = step;
+    }
 
-                        System.out.println("🖱️ CLIC SIMPLE à: " + clickX + ", " + clickY + " (bouton: " + button + ")");
-                    }
-                    break;
-                case "MOUSE_PRESS":
-                    int pressX = Integer.parseInt(extractJsonValue(eventJson, "x"));
-                    int pressY = Integer.parseInt(extractJsonValue(eventJson, "y"));
-                    int pressButton = Integer.parseInt(extractJsonValue(eventJson, "button"));
-
-                    if (isValidCoordinate(pressX, pressY)) {
-                        robot.mouseMove(pressX, pressY);
-                        robot.mousePress(getMouseButton(pressButton));
-                        System.out.println("🖱️ Pression souris à: " + pressX + ", " + pressY);
-                    }
-                    break;
+    private void scheduleContinuation() {
+        if (continuation == null) {
+            return;
+        }
+        Runnable step = continuation;
+        continuation = null;
+        paused = true;
+        injector.schedule(() -> runStep(step), continuationDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void runStep(Runnable step) {
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            System.err.println("❌ Erreur lors de l'exécution de l'événement: " + e.getMessage());
+        }
+        paused = false;
+        scheduleContinuation();
+        drain();
+    }
 
-                case "MOUSE_RELEASE":
-                    int releaseX = Integer.parseInt(extractJsonValue(eventJson, "x"));
-                    int releaseY = Integer.parseInt(extractJsonValue(eventJson, "y"));
-                    int releaseButton = Integer.parseInt(extractJsonValue(eventJson, "button"));
+    private void inject(CustomInputEvent event) {
+        if (debugMode) {
+            System.out.println("🎯 Événement reçu: " + event.getType());
+        }
 
-                    if (isValidCoordinate(releaseX, releaseY)) {
-                        robot.mouseMove(releaseX, releaseY);
-                        robot.mouseRelease(getMouseButton(releaseButton));
-                        System.out.println("🖱️ Relâchement souris à: " + releaseX + ", " + releaseY);
+        switch (event.getType()) {
+            case MOUSE_MOVE:
+                if (isValidCoordinate(event.getX(), event.getY())) {
+                    robot.mouseMove(event.getX(), event.getY());
+                    if (debugMode) {
+                        System.out.println("🖱️ Souris déplacée à: " + event.getX() + ", " + event.getY());
                     }
-                    break;
-
-                // ✅ AMÉLIORATION : Gestion clavier avec touches modificatrices
-                case "KEY_PRESS":
-                    int keyCode = Integer.parseInt(extractJsonValue(eventJson, "keyCode"));
-                    String key = extractJsonValue(eventJson, "key");
-                    boolean ctrlKey = extractJsonValue(eventJson, "ctrlKey").equals("true");
-                    boolean shiftKey = extractJsonValue(eventJson, "shiftKey").equals("true");
-                    boolean altKey = extractJsonValue(eventJson, "altKey").equals("true");
-
-                    // ✅ NOUVEAU : Gestion spéciale pour les caractères
-                    if (key.length() == 1 && Character.isLetter(key.charAt(0))) {
-                        simulateCharacterInput(key.charAt(0));
-                    } else {
-                        int javaKeyCode = convertToJavaKeyCode(keyCode);
-
-                        // Appuyer sur les modificateurs d'abord
-                        if (ctrlKey) robot.keyPress(KeyEvent.VK_CONTROL);
-                        if (shiftKey) robot.keyPress(KeyEvent.VK_SHIFT);
-                        if (altKey) robot.keyPress(KeyEvent.VK_ALT);
-
-                        // Appuyer sur la touche principale
-                        robot.keyPress(javaKeyCode);
-                        Thread.sleep(50);
+                }
+                break;
+
+            // ✅ MODIFICATION : Simplifier la gestion des clics
+            case MOUSE_CLICK:
+                if (isValidCoordinate(event.getX(), event.getY())) {
+                    int mouseButton = getMouseButton(event.getButton());
+                    robot.mouseMove(event.getX(), event.getY());
+                    later(CLICK_MOVE_DELAY_MS, () -> {
+                        robot.mousePress(mouseButton);
+                        later(PRESS_DURATION_MS, () -> robot.mouseRelease(mouseButton));
+                    });
+
+                    System.out.println("🖱️ CLIC SIMPLE à: " + event.getX() + ", " + event.getY() + " (bouton: " + event.getButton() + ")");
+                }
+                break;
+
+            case MOUSE_PRESS:
+                if (isValidCoordinate(event.getX(), event.getY())) {
+                    robot.mouseMove(event.getX(), event.getY());
+                    robot.mousePress(getMouseButton(event.getButton()));
+                    System.out.println("🖱️ Pression souris à: " + event.getX() + ", " + event.getY());
+                }
+                break;
+
+            case MOUSE_RELEASE:
+                if (isValidCoordinate(event.getX(), event.getY())) {
+                    robot.mouseMove(event.getX(), event.getY());
+                    robot.mouseRelease(getMouseButton(event.getButton()));
+                    System.out.println("🖱️ Relâchement souris à: " + event.getX() + ", " + event.getY());
+                }
+                break;
+
+            // ✅ AMÉLIORATION : Gestion clavier avec touches modificatrices
+            case KEY_PRESS:
+                boolean ctrlKey = event.hasModifier(CustomInputEvent.MODIFIER_CTRL);
+                boolean shiftKey = event.hasModifier(CustomInputEvent.MODIFIER_SHIFT);
+                boolean altKey = event.hasModifier(CustomInputEvent.MODIFIER_ALT);
+
+                // ✅ NOUVEAU : Gestion spéciale pour les caractères
+                if (Character.isLetter(event.getKeyChar())) {
+                    simulateCharacterInput(event.getKeyChar());
+                } else {
+                    int javaKeyCode = convertToJavaKeyCode(event.getKeyCode());
+
+                    // Appuyer sur les modificateurs d'abord
+                    if (ctrlKey) robot.keyPress(KeyEvent.VK_CONTROL);
+                    if (shiftKey) robot.keyPress(KeyEvent.VK_SHIFT);
+                    if (altKey) robot.keyPress(KeyEvent.VK_ALT);
+
+                    // Appuyer sur la touche principale, relâchée après PRESS_DURATION_MS
+                    robot.keyPress(javaKeyCode);
+                    later(PRESS_DURATION_MS, () -> {
                         robot.keyRelease(javaKeyCode);
 
                         // Relâcher les modificateurs
                         if (altKey) robot.keyRelease(KeyEvent.VK_ALT);
                         if (shiftKey) robot.keyRelease(KeyEvent.VK_SHIFT);
                         if (ctrlKey) robot.keyRelease(KeyEvent.VK_CONTROL);
-                    }
-
-                    System.out.println("⌨️ Touche pressée: " + key + " (" + keyCode + ")" +
-                            (ctrlKey ? " +Ctrl" : "") +
-                            (shiftKey ? " +Shift" : "") +
-                            (altKey ? " +Alt" : ""));
-                    break;
-
-                case "KEY_RELEASE":
-                    int releaseKeyCode = Integer.parseInt(extractJsonValue(eventJson, "keyCode"));
-                    int javaReleaseKeyCode = convertToJavaKeyCode(releaseKeyCode);
-                    robot.keyRelease(javaReleaseKeyCode);
-                    System.out.println("⌨️ Touche relâchée: " + releaseKeyCode);
-                    break;
-
-                case "MOUSE_WHEEL":
-                    int deltaY = Integer.parseInt(extractJsonValue(eventJson, "deltaY"));
-                    int wheelRotation = deltaY > 0 ? 3 : -3;
-                    robot.mouseWheel(wheelRotation);
-                    System.out.println("🎡 Molette: " + deltaY + " -> " + wheelRotation);
-                    break;
-
-                default:
-                    System.out.println("❓ Type d'événement inconnu: " + type);
-            }
-        } catch (Exception e) {
-            System.err.println("❌ Erreur lors de l'exécution de l'événement: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
+                    });
+                }
 
-    // ✅ NOUVELLE MÉTHODE : Simuler activation de champ
-    private void simulateFieldActivation(int x, int y) {
-        try {
+                System.out.println("⌨️ Touche pressée: " + describeKey(event) + " (" + event.getKeyCode() + ")" +
+                        (ctrlKey ? " +Ctrl" : "") +
+                        (shiftKey ? " +Shift" : "") +
+                        (altKey ? " +Alt" : ""));
+                break;
 
-            Thread.sleep(50);
+            case KEY_RELEASE:
+                int javaReleaseKeyCode = convertToJavaKeyCode(event.getKeyCode());
+                robot.keyRelease(javaReleaseKeyCode);
+                System.out.println("⌨️ Touche relâchée: " + event.getKeyCode());
+                break;
 
+            case MOUSE_WHEEL:
+                int wheelRotation = event.getWheelDelta() > 0 ? 3 : -3;
+                robot.mouseWheel(wheelRotation);
+                System.out.println("🎡 Molette: " + event.getWheelDelta() + " -> " + wheelRotation);
+                break;
 
-            System.out.println("🎯 Activation de champ simulée");
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            default:
+                System.out.println("❓ Type d'événement inconnu: " + event.getType());
         }
     }
 
     // ✅ NOUVELLE MÉTHODE : Simuler saisie de caractère
     private void simulateCharacterInput(char c) {
-        try {
-            if (Character.isLetter(c)) {
-                boolean isUpperCase = Character.isUpperCase(c);
-                int keyCode = KeyEvent.getExtendedKeyCodeForChar(Character.toUpperCase(c));
-
-                if (keyCode != KeyEvent.VK_UNDEFINED) {
-                    if (isUpperCase) {
-                        robot.keyPress(KeyEvent.VK_SHIFT);
-                    }
+        boolean isUpperCase = Character.isUpperCase(c);
+        int keyCode = KeyEvent.getExtendedKeyCodeForChar(Character.toUpperCase(c));
 
-                    robot.keyPress(keyCode);
-                    Thread.sleep(50);
-                    robot.keyRelease(keyCode);
+        if (keyCode != KeyEvent.VK_UNDEFINED) {
+            if (isUpperCase) {
+                robot.keyPress(KeyEvent.VK_SHIFT);
+            }
 
-                    if (isUpperCase) {
-                        robot.keyRelease(KeyEvent.VK_SHIFT);
-                    }
+            robot.keyPress(keyCode);
+            later(PRESS_DURATION_MS, () -> {
+                robot.keyRelease(keyCode);
 
-                    System.out.println("📝 Caractère saisi: " + c);
+                if (isUpperCase) {
+                    robot.keyRelease(KeyEvent.VK_SHIFT);
                 }
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            });
+
+            System.out.println("📝 Caractère saisi: " + c);
         }
     }
 
+    private String describeKey(CustomInputEvent event) {
+        return event.getKeyChar() != 0 ? String.valueOf(event.getKeyChar()) : "?";
+    }
+
     private boolean isValidCoordinate(int x, int y) {
-        Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
-        boolean valid = x >= 0 && x < screenSize.width && y >= 0 && y < screenSize.height;
+        boolean valid = desktop.contains(x, y);
 
         if (!valid && debugMode) {
-            System.out.println("⚠️ Coordonnées corrigées: " + x + ", " + y +
-                    " -> " + Math.min(x, screenSize.width-1) + ", " + Math.min(y, screenSize.height-1));
+            System.out.println("⚠️ Coordonnées hors du bureau: " + x + ", " + y + " (" + desktop + ")");
         }
 
         return true;
     }
 
-    private String extractJsonValue(String json, String key) {
-        String searchKey = "\"" + key + "\":";
-        int startIndex = json.indexOf(searchKey);
-        if (startIndex == -1) return "0";
-
-        startIndex += searchKey.length();
-
-        while (startIndex < json.length() && Character.isWhitespace(json.charAt(startIndex))) {
-            startIndex++;
-        }
-
-        int endIndex = startIndex;
-        boolean inString = false;
-
-        if (json.charAt(startIndex) == '"') {
-            inString = true;
-            startIndex++;
-            endIndex = startIndex;
-            while (endIndex < json.length() && json.charAt(endIndex) != '"') {
-                endIndex++;
-            }
-        } else {
-            while (endIndex < json.length() &&
-                    json.charAt(endIndex) != ',' &&
-                    json.charAt(endIndex) != '}') {
-                endIndex++;
-            }
+    private static Rectangle getDesktopBounds() {
+        Rectangle bounds = new Rectangle();
+        for (GraphicsDevice device : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+            Rectangle monitor = device.getDefaultConfiguration().getBounds();
+            bounds = bounds.isEmpty() ? new Rectangle(monitor) : bounds.union(monitor);
         }
-
-        return json.substring(startIndex, endIndex).trim();
+        return bounds;
     }
 
     private int getMouseButton(int button) {
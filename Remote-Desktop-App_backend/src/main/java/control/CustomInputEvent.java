@@ -6,15 +6,52 @@ public class CustomInputEvent implements Serializable {
     private static final long serialVersionUID = 1L;
 
     public enum EventType {
-        MOUSE_MOVE, MOUSE_CLICK, MOUSE_PRESS, MOUSE_RELEASE,
-        KEY_PRESS, KEY_RELEASE, KEY_TYPE
+        MOUSE_MOVE(1), MOUSE_CLICK(2), MOUSE_PRESS(3), MOUSE_RELEASE(4),
+        KEY_PRESS(5), KEY_RELEASE(6), KEY_TYPE(7), MOUSE_WHEEL(8);
+
+        private static final EventType[] BY_CODE = new EventType[16];
+
+        static {
+            for (EventType type : values()) {
+                BY_CODE[type.code] = type;
+            }
+        }
+
+        // Code sur un octet du format binaire (voir InputEventCodec)
+        private final int code;
+
+        EventType(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        // null si le code est inconnu
+        public static EventType fromCode(int code) {
+            return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        }
     }
 
+    // Touches modificatrices (champ modifiers)
+    public static final int MODIFIER_CTRL = 1;
+    public static final int MODIFIER_SHIFT = 2;
+    public static final int MODIFIER_ALT = 4;
+
     private EventType type;
     private int x, y;
     private int button;
     private int keyCode;
+    private char keyChar;
+    private int modifiers;
+    private int wheelDelta;
     private long timestamp;
+    private long clientTimestamp;
+
+    // Événement vide, destiné à être rempli par set() et réutilisé d'un événement à l'autre
+    public CustomInputEvent() {
+    }
 
     public CustomInputEvent(EventType type, int x, int y) {
         this.type = type;
@@ -35,11 +72,70 @@ public class CustomInputEvent implements Serializable {
         this.timestamp = System.currentTimeMillis();
     }
 
+    // Événement complet ; keyChar vaut 0 si la touche ne correspond pas à un caractère
+    public CustomInputEvent(EventType type, int x, int y, int button, int keyCode, char keyChar,
+                            int modifiers, int wheelDelta) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.button = button;
+        this.keyCode = keyCode;
+        this.keyChar = keyChar;
+        this.modifiers = modifiers;
+        this.wheelDelta = wheelDelta;
+        this.timestamp = System.currentTimeMillis();
+    }
+
     // Getters
     public EventType getType() { return type; }
     public int getX() { return x; }
     public int getY() { return y; }
     public int getButton() { return button; }
     public int getKeyCode() { return keyCode; }
+    public char getKeyChar() { return keyChar; }
+    public int getModifiers() { return modifiers; }
+    public int getWheelDelta() { return wheelDelta; }
     public long getTimestamp() { return timestamp; }
+    public long getClientTimestamp() { return clientTimestamp; }
+
+    public boolean hasModifier(int modifier) { return (modifiers & modifier) != 0; }
+
+    // Événements souris positionnés ; la molette agit à la position courante
+    public boolean hasPosition() {
+        return type == EventType.MOUSE_MOVE || type == EventType.MOUSE_CLICK
+                || type == EventType.MOUSE_PRESS || type == EventType.MOUSE_RELEASE;
+    }
+
+    public void setPosition(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    // Remplit l'événement sans allocation ; timestamp = heure de réception côté serveur
+    public void set(EventType type, int x, int y, int button, int keyCode, char keyChar,
+                    int modifiers, int wheelDelta, long clientTimestamp) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.button = button;
+        this.keyCode = keyCode;
+        this.keyChar = keyChar;
+        this.modifiers = modifiers;
+        this.wheelDelta = wheelDelta;
+        this.clientTimestamp = clientTimestamp;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public void copyFrom(CustomInputEvent other) {
+        this.type = other.type;
+        this.x = other.x;
+        this.y = other.y;
+        this.button = other.button;
+        this.keyCode = other.keyCode;
+        this.keyChar = other.keyChar;
+        this.modifiers = other.modifiers;
+        this.wheelDelta = other.wheelDelta;
+        this.clientTimestamp = other.clientTimestamp;
+        this.timestamp = other.timestamp;
+    }
 }
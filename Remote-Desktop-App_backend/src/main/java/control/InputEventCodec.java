@@ -0,0 +1,157 @@
+package main.java.control;
+
+/**
+ * Décodage des événements d'entrée envoyés par le client.
+ *
+ * Format binaire (message INPUT_EVENT binaire, après l'opcode), 24 octets,
+ * entiers big-endian :
+ *
+ *   0  u8   type (CustomInputEvent.EventType.getCode())
+ *   1  u8   bouton (0 gauche, 1 milieu, 2 droit)
+ *   2  u8   modificateurs (1 Ctrl, 2 Shift, 4 Alt)
+ *   3  u8   réservé
+ *   4  i16  x
+ *   6  i16  y
+ *   8  u16  keyCode (code JavaScript)
+ *   10 u16  caractère de la touche (UTF-16, 0 si aucun)
+ *   12 i16  deltaY de la molette
+ *   14 u16  réservé
+ *   16 f64  horodatage client (ms depuis l'époque)
+ *
+ * Le décodage remplit un CustomInputEvent fourni, sans allocation. L'ancien
+ * format JSON reste accepté (clients texte ou anciens clients).
+ */
+public final class InputEventCodec {
+    public static final int ENCODED_SIZE = 24;
+
+    private InputEventCodec() {
+    }
+
+    // false si le message est trop court ou le type inconnu
+    public static boolean decode(byte[] data, int offset, int length, CustomInputEvent into) {
+        if (length < ENCODED_SIZE) {
+            return false;
+        }
+        CustomInputEvent.EventType type = CustomInputEvent.EventType.fromCode(data[offset] & 0xFF);
+        if (type == null) {
+            return false;
+        }
+
+        int button = data[offset + 1] & 0xFF;
+        int modifiers = data[offset + 2] & 0xFF;
+        int x = readShort(data, offset + 4);
+        int y = readShort(data, offset + 6);
+        int keyCode = readShort(data, offset + 8) & 0xFFFF;
+        char keyChar = (char) readShort(data, offset + 10);
+        int wheelDelta = readShort(data, offset + 12);
+        long clientTimestamp = (long) Double.longBitsToDouble(readLong(data, offset + 16));
+
+        into.set(type, x, y, button, keyCode, keyChar, modifiers, wheelDelta, clientTimestamp);
+        return true;
+    }
+
+    // Ancien format : {"type":"MOUSE_MOVE","x":10,"y":20,...} ; false si le type est inconnu
+    public static boolean decodeJson(String eventJson, CustomInputEvent into) {
+        String typeName = extractJsonValue(eventJson, "type");
+        CustomInputEvent.EventType type;
+        try {
+            type = CustomInputEvent.EventType.valueOf(typeName);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❓ Type d'événement inconnu: " + typeName);
+            return false;
+        }
+
+        int x = 0;
+        int y = 0;
+        int button = 0;
+        int keyCode = 0;
+        char keyChar = 0;
+        int modifiers = 0;
+        int wheelDelta = 0;
+
+        switch (type) {
+            case MOUSE_MOVE:
+                x = Integer.parseInt(extractJsonValue(eventJson, "x"));
+                y = Integer.parseInt(extractJsonValue(eventJson, "y"));
+                break;
+            case MOUSE_CLICK:
+            case MOUSE_PRESS:
+            case MOUSE_RELEASE:
+                x = Integer.parseInt(extractJsonValue(eventJson, "x"));
+                y = Integer.parseInt(extractJsonValue(eventJson, "y"));
+                button = Integer.parseInt(extractJsonValue(eventJson, "button"));
+                break;
+            case KEY_PRESS:
+            case KEY_RELEASE:
+            case KEY_TYPE:
+                keyCode = Integer.parseInt(extractJsonValue(eventJson, "keyCode"));
+                String key = extractJsonValue(eventJson, "key");
+                keyChar = key.length() == 1 ? key.charAt(0) : 0;
+                modifiers = (extractJsonValue(eventJson, "ctrlKey").equals("true") ? CustomInputEvent.MODIFIER_CTRL : 0)
+                        | (extractJsonValue(eventJson, "shiftKey").equals("true") ? CustomInputEvent.MODIFIER_SHIFT : 0)
+                        | (extractJsonValue(eventJson, "altKey").equals("true") ? CustomInputEvent.MODIFIER_ALT : 0);
+                break;
+            case MOUSE_WHEEL:
+                wheelDelta = Integer.parseInt(extractJsonValue(eventJson, "deltaY"));
+                break;
+            default:
+                break;
+        }
+
+        long clientTimestamp = parseTimestamp(extractJsonValue(eventJson, "timestamp"));
+        into.set(type, x, y, button, keyCode, keyChar, modifiers, wheelDelta, clientTimestamp);
+        return true;
+    }
+
+    // Horodatage facultatif, souvent fractionnaire (performance.now()) : tronqué, 0 s'il est illisible
+    private static long parseTimestamp(String value) {
+        try {
+            double millis = Double.parseDouble(value);
+            return Double.isFinite(millis) ? (long) millis : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static short readShort(byte[] data, int offset) {
+        return (short) (((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF));
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static String extractJsonValue(String json, String key) {
+        String searchKey = "\"" + key + "\":";
+        int startIndex = json.indexOf(searchKey);
+        if (startIndex == -1) return "0";
+
+        startIndex += searchKey.length();
+
+        while (startIndex < json.length() && Character.isWhitespace(json.charAt(startIndex))) {
+            startIndex++;
+        }
+
+        int endIndex = startIndex;
+
+        if (json.charAt(startIndex) == '"') {
+            startIndex++;
+            endIndex = startIndex;
+            while (endIndex < json.length() && json.charAt(endIndex) != '"') {
+                endIndex++;
+            }
+        } else {
+            while (endIndex < json.length() &&
+                    json.charAt(endIndex) != ',' &&
+                    json.charAt(endIndex) != '}') {
+                endIndex++;
+            }
+        }
+
+        return json.substring(startIndex, endIndex).trim();
+    }
+}
@@ -4,18 +4,29 @@ import java.io.*;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import main.java.utils.TimerWheel;
 
 public class FileTransferManager {
-    private static final String UPLOAD_DIR = "uploads/";
     private static final long MAX_FILE_SIZE = 50 * 1024 * 1024; // 50MB max
     private static final int CHUNK_SIZE = 32768; // 32KB chunks
+    // Session sans chunk lu ou écrit depuis ce délai : abandonnée par le client, fichier fermé
+    private static final long SESSION_IDLE_TIMEOUT = Long.getLong("rc.fileTransfer.idleTimeoutMs", 2 * 60 * 1000L);
 
     private Map<String, FileTransferSession> activeSessions = new ConcurrentHashMap<>();
-
-    public FileTransferManager() {
+    private final TimerWheel timers;
+    // Fermeture des sessions abandonnées : close() peut attendre l'écriture d'un chunk en cours
+    private final Executor fileExecutor;
+    // Espace de fichiers de la salle (terminé par "/")
+    private final String uploadDir;
+
+    public FileTransferManager(TimerWheel timers, Executor fileExecutor, String uploadDir) {
+        this.timers = timers;
+        this.fileExecutor = fileExecutor;
+        this.uploadDir = uploadDir;
         try {
-            Files.createDirectories(Paths.get(UPLOAD_DIR));
-            System.out.println("📁 Dossier uploads créé: " + new File(UPLOAD_DIR).getAbsolutePath());
+            Files.createDirectories(Paths.get(uploadDir));
+            System.out.println("📁 Dossier uploads créé: " + new File(uploadDir).getAbsolutePath());
         } catch (IOException e) {
             System.err.println("Erreur création dossier uploads: " + e.getMessage());
         }
@@ -36,7 +47,7 @@ public class FileTransferManager {
 
         String sessionId = UUID.randomUUID().toString().substring(0, 8);
         String sanitizedFileName = sanitizeFileName(fileName);
-        String filePath = UPLOAD_DIR + sessionId + "_" + sanitizedFileName;
+        String filePath = uploadDir + sessionId + "_" + sanitizedFileName;
 
         // ✅ CORRECTION : Créer le fichier immédiatement avec la bonne taille
         try {
@@ -60,6 +71,7 @@ public class FileTransferManager {
                 sessionId, clientId, filePath, fileSize, fileType
         );
 
+        scheduleIdleCheck(session, SESSION_IDLE_TIMEOUT);
         activeSessions.put(sessionId, session);
         System.out.println("✅ Session upload créée: " + sessionId + " pour " + fileName + " (" + formatFileSize(fileSize) + ")");
         return sessionId;
@@ -83,6 +95,7 @@ public class FileTransferManager {
                 File file = new File(session.getFilePath());
                 System.out.println("📊 Taille finale du fichier: " + file.length() + " bytes (attendu: " + session.getFileSize() + ")");
 
+                session.idleTimeout.cancel();
                 session.close();
                 activeSessions.remove(sessionId);
             } else {
@@ -115,6 +128,7 @@ public class FileTransferManager {
                     sessionId, clientId, filePath, file.length(), getFileType(fileName)
             );
 
+            scheduleIdleCheck(session, SESSION_IDLE_TIMEOUT);
             activeSessions.put(sessionId, session);
             return session;
         } catch (Exception e) {
@@ -143,7 +157,7 @@ public class FileTransferManager {
         List<FileInfo> files = new ArrayList<>();
 
         try {
-            Files.list(Paths.get(UPLOAD_DIR))
+            Files.list(Paths.get(uploadDir))
                     .filter(Files::isRegularFile)
                     .forEach(path -> {
                         File file = path.toFile();
@@ -183,12 +197,13 @@ public class FileTransferManager {
         try {
             // Fermer toutes les sessions actives
             for (FileTransferSession session : activeSessions.values()) {
+                session.idleTimeout.cancel();
                 session.close();
             }
             activeSessions.clear();
 
             // Supprimer tous les fichiers
-            Files.list(Paths.get(UPLOAD_DIR))
+            Files.list(Paths.get(uploadDir))
                     .filter(Files::isRegularFile)
                     .forEach(path -> {
                         try {
@@ -206,18 +221,43 @@ public class FileTransferManager {
     public void removeSession(String sessionId) {
         FileTransferSession session = activeSessions.remove(sessionId);
         if (session != null) {
+            session.idleTimeout.cancel();
             session.close();
             System.out.println("🧹 Session supprimée: " + sessionId);
         }
     }
 
+    private void scheduleIdleCheck(FileTransferSession session, long delay) {
+        session.idleTimeout = timers.schedule(() -> checkIdle(session), delay);
+    }
+
+    // Sur le thread de la roue temporelle : relit l'horodatage, chaque chunk ne fait que l'écrire ;
+    // la fermeture du fichier part sur l'exécuteur de fichiers
+    private void checkIdle(FileTransferSession session) {
+        if (activeSessions.get(session.getSessionId()) != session) {
+            return;
+        }
+        long idle = System.currentTimeMillis() - session.getLastActivityTime();
+        if (idle < SESSION_IDLE_TIMEOUT) {
+            scheduleIdleCheck(session, SESSION_IDLE_TIMEOUT - idle);
+            return;
+        }
+        if (activeSessions.remove(session.getSessionId(), session)) {
+            fileExecutor.execute(() -> {
+                session.close();
+                System.out.println("⌛ Session de transfert abandonnée fermée: " + session.getSessionId()
+                        + " (" + session.getFileName() + ", inactive depuis " + (idle / 1000) + "s)");
+            });
+        }
+    }
+
     private String sanitizeFileName(String fileName) {
         return fileName.replaceAll("[^a-zA-Z0-9._-]", "_");
     }
 
     private String findFile(String fileName) {
         try {
-            return Files.list(Paths.get(UPLOAD_DIR))
+            return Files.list(Paths.get(uploadDir))
                     .filter(Files::isRegularFile)
                     .filter(path -> {
                         String fullName = path.getFileName().toString();
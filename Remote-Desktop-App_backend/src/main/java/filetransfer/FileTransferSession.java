@@ -2,6 +2,7 @@ package main.java.filetransfer;
 
 import java.io.*;
 import java.util.concurrent.ConcurrentHashMap;
+import main.java.utils.TimerWheel;
 
 public class FileTransferSession {
     private String sessionId;
@@ -14,6 +15,9 @@ public class FileTransferSession {
     private int totalChunks;
     private static final int CHUNK_SIZE = 32768;
     private boolean isClosed = false;
+    // Dernier chunk lu ou écrit : une session abandonnée est fermée par FileTransferManager
+    private volatile long lastActivityTime = System.currentTimeMillis();
+    TimerWheel.Timeout idleTimeout;
 
     public FileTransferSession(String sessionId, String clientId, String filePath,
                                long fileSize, String fileType) {
@@ -40,6 +44,7 @@ public class FileTransferSession {
             file.write(data);
             file.getFD().sync(); // ✅ CORRECTION : Forcer l'écriture sur disque
             receivedChunks.put(chunkIndex, true);
+            lastActivityTime = System.currentTimeMillis();
 
             System.out.println("✍️ Chunk " + chunkIndex + " écrit à l'offset " + offset + " (" + data.length + " bytes)");
         }
@@ -49,6 +54,7 @@ public class FileTransferSession {
         if (file != null && !isClosed) {
             long offset = (long) chunkIndex * CHUNK_SIZE;
             file.seek(offset);
+            lastActivityTime = System.currentTimeMillis();
 
             int bytesToRead = (int) Math.min(CHUNK_SIZE, fileSize - offset);
             byte[] buffer = new byte[bytesToRead];
@@ -106,5 +112,6 @@ public class FileTransferSession {
     public int getTotalChunks() { return totalChunks; }
     public int getReceivedChunks() { return receivedChunks.size(); }
     public boolean isClosed() { return isClosed; }
+    public long getLastActivityTime() { return lastActivityTime; }
     public String getFilePath() { return filePath; }
 }
\ No newline at end of file
@@ -1,4 +1,33 @@
 package main.java.models;
 
+/**
+ * Membre authentifié d'une salle : son identifiant de connexion, son nom
+ * d'affichage (modifiable) et la salle qu'il a rejointe.
+ */
 public class Client {
+    private final String clientId;
+    private final Session session;
+    private volatile String displayName;
+
+    public Client(String clientId, String displayName, Session session) {
+        this.clientId = clientId;
+        this.displayName = displayName;
+        this.session = session;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public void setDisplayName(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public Session getSession() {
+        return session;
+    }
 }
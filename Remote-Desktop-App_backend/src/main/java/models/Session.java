@@ -1,4 +1,81 @@
 package main.java.models;
 
+import main.java.chat.ChatManager;
+import main.java.filetransfer.FileTransferManager;
+import main.java.server.ClientRegistry;
+import main.java.server.ControlQueue;
+import java.util.concurrent.Executor;
+import main.java.utils.TimerWheel;
+
+/**
+ * Salle : un groupe de clients indépendant des autres salles du même
+ * serveur, avec sa propre file de contrôle, son historique de chat et son
+ * espace de fichiers.
+ *
+ * La capture d'écran n'appartient pas à la salle : une salle s'abonne à la
+ * source du serveur, et toutes les salles abonnées partagent les mêmes
+ * captures et les mêmes encodages (un encodage par format demandé, quel que
+ * soit le nombre de salles).
+ */
 public class Session {
+    public static final String DEFAULT_ID = "default";
+
+    private final String id;
+    private final ControlQueue controlQueue;
+    private final ChatManager chatManager;
+    private final FileTransferManager fileTransferManager;
+    // Connexions de la salle ; l'instantané des authentifiés sert aux diffusions de la salle
+    private final ClientRegistry clients = new ClientRegistry();
+    private final long createdTime = System.currentTimeMillis();
+    private volatile boolean captureSubscribed = true;
+
+    public Session(String id, TimerWheel timers, Executor fileExecutor) {
+        this.id = id;
+        this.controlQueue = new ControlQueue(timers);
+        this.chatManager = new ChatManager();
+        // La salle par défaut garde le dossier historique, les autres ont leur sous-dossier
+        this.fileTransferManager = new FileTransferManager(timers, fileExecutor,
+                isDefault() ? "uploads/" : "uploads/rooms/" + id + "/");
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isDefault() {
+        return DEFAULT_ID.equals(id);
+    }
+
+    public ControlQueue getControlQueue() {
+        return controlQueue;
+    }
+
+    public ChatManager getChatManager() {
+        return chatManager;
+    }
+
+    public FileTransferManager getFileTransferManager() {
+        return fileTransferManager;
+    }
+
+    public ClientRegistry getClients() {
+        return clients;
+    }
+
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public boolean isCaptureSubscribed() {
+        return captureSubscribed;
+    }
+
+    // Une salle désabonnée ne reçoit plus d'images et ne compte plus dans la demande de capture
+    public void setCaptureSubscribed(boolean captureSubscribed) {
+        this.captureSubscribed = captureSubscribed;
+    }
+
+    public void close() {
+        controlQueue.shutdown();
+    }
 }
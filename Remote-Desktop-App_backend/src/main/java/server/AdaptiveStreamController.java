@@ -0,0 +1,105 @@
+package main.java.server;
+
+import main.java.capture.QualityLevel;
+
+/**
+ * Adapte la cadence et la qualité d'un client à partir de la latence
+ * d'écriture mesurée sur sa socket, des octets en vol (l'image et tout ce
+ * qui la précède dans la file d'émission) et des images écrasées pendant
+ * qu'une écriture était en cours.
+ *
+ * Le temps nécessaire pour vider les octets en vol au débit mesuré est
+ * comparé au budget d'une image : au-delà de 60 % la connexion est jugée
+ * congestionnée, en dessous de 25 % elle a de la marge.
+ *
+ * En cas de congestion on descend d'abord la cadence jusqu'à 10 FPS, puis
+ * la qualité, puis à nouveau la cadence ; la remontée suit l'ordre inverse.
+ */
+public class AdaptiveStreamController {
+    private static final int MIN_FPS = 2;
+    private static final int COMFORT_FPS = 10;
+    private static final int MAX_FPS = 30;
+    private static final long ADJUST_INTERVAL_MS = 1000;
+    private static final double SMOOTHING = 0.2;
+
+    private volatile int targetFps = COMFORT_FPS;
+    private volatile QualityLevel quality = QualityLevel.MEDIUM;
+
+    private double averageWriteMillis = 0;
+    private double bytesPerMilli = 0; // débit d'écriture lissé
+    private long bytesInFlight = 0;
+    private long peakBytesInFlight = 0; // sur la fenêtre d'ajustement
+    private int framesSent = 0;
+    private int framesDropped = 0;
+    private long lastAdjustTime = System.currentTimeMillis();
+
+    // queuedAhead : octets déjà dans la file d'émission, écrits avant l'image
+    public synchronized void recordWriteStart(int bytes, long queuedAhead) {
+        bytesInFlight = bytes + queuedAhead;
+        peakBytesInFlight = Math.max(peakBytesInFlight, bytesInFlight);
+    }
+
+    public synchronized void recordWriteEnd(long elapsedNanos) {
+        double millis = elapsedNanos / 1_000_000.0;
+        boolean first = framesSent == 0 && averageWriteMillis == 0;
+        averageWriteMillis = first ? millis : SMOOTHING * millis + (1 - SMOOTHING) * averageWriteMillis;
+        // L'image n'est remise qu'après ce qui la précédait : le débit porte sur l'ensemble
+        double rate = bytesInFlight / Math.max(millis, 0.01);
+        bytesPerMilli = first || bytesPerMilli == 0 ? rate : SMOOTHING * rate + (1 - SMOOTHING) * bytesPerMilli;
+        bytesInFlight = 0;
+        framesSent++;
+        adjustIfDue();
+    }
+
+    // Une image a été remplacée alors que la précédente n'avait pas fini de partir
+    public synchronized void recordDrop() {
+        framesDropped++;
+        adjustIfDue();
+    }
+
+    private void adjustIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastAdjustTime < ADJUST_INTERVAL_MS) {
+            return;
+        }
+
+        double frameBudget = 1000.0 / targetFps;
+        double drainMillis = bytesPerMilli > 0 ? peakBytesInFlight / bytesPerMilli : 0;
+        boolean congested = framesDropped > 0 || averageWriteMillis > frameBudget * 0.6
+                || drainMillis > frameBudget * 0.6;
+        boolean headroom = framesDropped == 0 && averageWriteMillis < frameBudget * 0.25
+                && drainMillis < frameBudget * 0.25;
+
+        if (congested) {
+            if (targetFps > COMFORT_FPS) {
+                targetFps = Math.max(COMFORT_FPS, targetFps * 3 / 4);
+            } else if (quality != QualityLevel.LOW) {
+                quality = quality.lower();
+            } else {
+                targetFps = Math.max(MIN_FPS, targetFps * 3 / 4);
+            }
+        } else if (headroom) {
+            if (targetFps < COMFORT_FPS) {
+                targetFps = Math.min(COMFORT_FPS, targetFps + 2);
+            } else if (quality != QualityLevel.HIGH) {
+                quality = quality.higher();
+            } else {
+                targetFps = Math.min(MAX_FPS, targetFps + 5);
+            }
+        }
+
+        framesSent = 0;
+        framesDropped = 0;
+        peakBytesInFlight = bytesInFlight;
+        lastAdjustTime = now;
+    }
+
+    public long getFrameIntervalMillis() {
+        return 1000L / targetFps;
+    }
+
+    public int getTargetFps() { return targetFps; }
+    public QualityLevel getQuality() { return quality; }
+    public synchronized double getAverageWriteMillis() { return averageWriteMillis; }
+    public synchronized long getBytesInFlight() { return bytesInFlight; }
+}
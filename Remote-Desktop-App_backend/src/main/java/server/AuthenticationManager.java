@@ -6,12 +6,17 @@ import java.util.UUID;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.security.SecureRandom;
+import main.java.utils.TimerWheel;
 
 public class AuthenticationManager {
     private Map<String, PendingConnection> pendingConnections = new ConcurrentHashMap<>();
     private Map<String, AuthenticatedClient> authenticatedClients = new ConcurrentHashMap<>();
     private Map<String, String> clientPasswords = new ConcurrentHashMap<>();
     private SecureRandom secureRandom = new SecureRandom();
+    private final TimerWheel timers;
+
+    // Une demande sans réponse de l'hôte expire : le client est prévenu et déconnecté
+    private static final long PENDING_TIMEOUT = Long.getLong("rc.auth.pendingTimeoutMs", 5 * 60 * 1000L);
 
     // Caractères pour la génération de mots de passe
     private static final String UPPERCASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
@@ -26,6 +31,8 @@ public class AuthenticationManager {
         public LocalDateTime requestTime;
         public WebSocketClientHandler handler;
         public String generatedPassword;
+        // Programmée après l'enregistrement de la demande : null pendant un court instant
+        volatile TimerWheel.Timeout expiry;
 
         public PendingConnection(String requestId, String clientIP, WebSocketClientHandler handler, String password) {
             this.requestId = requestId;
@@ -34,6 +41,13 @@ public class AuthenticationManager {
             this.handler = handler;
             this.generatedPassword = password;
         }
+
+        void cancelExpiry() {
+            TimerWheel.Timeout timeout = expiry;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
     }
 
     public static class AuthenticatedClient {
@@ -60,6 +74,10 @@ public class AuthenticationManager {
         }
     }
 
+    public AuthenticationManager(TimerWheel timers) {
+        this.timers = timers;
+    }
+
     /**
      * Génère un mot de passe sécurisé et unique
      */
@@ -144,22 +162,41 @@ public class AuthenticationManager {
         PendingConnection pending = new PendingConnection(requestId, clientIP, handler, generatedPassword);
         pendingConnections.put(requestId, pending);
         clientPasswords.put(handler.getClientId(), generatedPassword);
+        // Enregistrée d'abord : l'échéance ne peut pas se déclencher sur une demande encore absente.
+        // Acceptée ou refusée entre-temps, elle ne trouvera plus rien à expirer.
+        pending.expiry = timers.schedule(() -> expireConnectionRequest(requestId), PENDING_TIMEOUT);
 
         System.out.println("🔔 DEMANDE DE CONNEXION");
         System.out.println("   ID: " + requestId);
         System.out.println("   IP: " + clientIP);
+        if (handler.getSession() != null) {
+            System.out.println("   Salle: " + handler.getSession().getId());
+        }
         System.out.println("   Heure: " + pending.requestTime);
         System.out.println("   🔑 MOT DE PASSE GÉNÉRÉ: " + generatedPassword);
         System.out.println("   Tapez 'accept " + requestId + "' pour accepter");
         System.out.println("   Tapez 'deny " + requestId + "' pour refuser");
         System.out.println("   ⚠️  Communiquez ce mot de passe au client : " + generatedPassword);
+        System.out.println("   ⌛ Expire dans " + (PENDING_TIMEOUT / 1000) + " secondes");
 
         return requestId;
     }
 
+    // Sur le thread de la roue temporelle
+    private void expireConnectionRequest(String requestId) {
+        PendingConnection pending = pendingConnections.remove(requestId);
+        if (pending != null) {
+            clientPasswords.remove(pending.handler.getClientId());
+            pending.handler.sendMessageFromTimer("CONNECTION_DENIED:Demande expirée, aucune réponse de l'hôte");
+            pending.handler.disconnectLater();
+            System.out.println("⌛ Demande de connexion expirée: " + requestId + " (" + pending.clientIP + ")");
+        }
+    }
+
     public boolean acceptConnection(String requestId) {
         PendingConnection pending = pendingConnections.remove(requestId);
         if (pending != null) {
+            pending.cancelExpiry();
             pending.handler.sendMessage("CONNECTION_ACCEPTED");
             pending.handler.sendMessage("GENERATED_PASSWORD:" + pending.generatedPassword);
 
@@ -173,6 +210,7 @@ public class AuthenticationManager {
     public boolean denyConnection(String requestId) {
         PendingConnection pending = pendingConnections.remove(requestId);
         if (pending != null) {
+            pending.cancelExpiry();
             clientPasswords.remove(pending.handler.getClientId());
             pending.handler.sendMessage("CONNECTION_DENIED:Connexion refusée par l'hôte");
             pending.handler.disconnect();
@@ -214,8 +252,13 @@ public class AuthenticationManager {
         authenticatedClients.remove(clientId);
         clientPasswords.remove(clientId);
 
-        pendingConnections.entrySet().removeIf(entry ->
-                entry.getValue().handler.getClientId().equals(clientId));
+        pendingConnections.values().removeIf(pending -> {
+            if (pending.handler.getClientId().equals(clientId)) {
+                pending.cancelExpiry();
+                return true;
+            }
+            return false;
+        });
     }
 
     public void listPendingConnections() {
@@ -289,6 +332,7 @@ public class AuthenticationManager {
 
         authenticatedClients.clear();
         clientPasswords.clear();
+        pendingConnections.values().forEach(PendingConnection::cancelExpiry);
         pendingConnections.clear();
 
         System.out.println("✅ Toutes les sessions ont été fermées");
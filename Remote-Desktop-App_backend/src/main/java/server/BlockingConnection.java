@@ -0,0 +1,196 @@
+package main.java.server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Transport sur socket bloquante : un thread dédié lit la connexion.
+ *
+ * Les écritures sont mises en file (OutboundQueue) et vidées par une seule
+ * tâche à la fois sur le pool fourni (threads virtuels ou plateforme) : une
+ * diffusion ne bloque jamais sur un client lent. Les petites trames en
+ * attente sont regroupées dans un tampon et partent en un seul flush.
+ */
+class BlockingConnection implements ClientConnection {
+    private static final int READ_BUFFER_SIZE = 8192;
+    // Les trames plus grosses que le tampon de regroupement sont écrites directement
+    private static final int COALESCE_BUFFER_SIZE = 16384;
+
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    private final Executor writerExecutor;
+    private final OutboundQueue queue = new OutboundQueue();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private volatile Runnable onFailure;
+    // Lecture suspendue : le thread de lecture attend ici (verrou plutôt que moniteur, threads virtuels)
+    private final ReentrantLock readGate = new ReentrantLock();
+    private final Condition readResumed = readGate.newCondition();
+    private boolean readPaused = false; // protégé par readGate
+
+    BlockingConnection(Socket socket, Executor writerExecutor) throws IOException {
+        this.socket = socket;
+        this.input = socket.getInputStream();
+        this.output = new BufferedOutputStream(socket.getOutputStream(), COALESCE_BUFFER_SIZE);
+        this.writerExecutor = writerExecutor;
+    }
+
+    // Appelé si une écriture asynchrone échoue (typiquement : déconnexion du client)
+    void setOnFailure(Runnable onFailure) {
+        this.onFailure = onFailure;
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, TrafficClass trafficClass, Runnable onWritten) throws IOException {
+        if (socket.isClosed()) {
+            throw new IOException("Connexion fermée");
+        }
+        queue.add(buffers, trafficClass, onWritten);
+        scheduleDrain();
+    }
+
+    @Override
+    public void write(Supplier<ByteBuffer[]> encoder, long estimatedBytes, TrafficClass trafficClass,
+                      Runnable onWritten) throws IOException {
+        if (socket.isClosed()) {
+            throw new IOException("Connexion fermée");
+        }
+        queue.add(encoder, estimatedBytes, trafficClass, onWritten);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() throws IOException {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                writerExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+                throw new IOException("Écrivain arrêté", e);
+            }
+        }
+    }
+
+    // Seule la tâche de vidage touche au flux de sortie : aucun verrou nécessaire.
+    // La file est relue après chaque trame : une trame prioritaire arrivée entre-temps passe devant.
+    private void drain() {
+        List<OutboundQueue.Entry> batch = new ArrayList<>();
+        try {
+            do {
+                long batchBytes = 0;
+                OutboundQueue.Entry entry;
+                while ((entry = queue.poll()) != null) {
+                    for (ByteBuffer buffer : entry.buffers) {
+                        output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                        buffer.position(buffer.limit());
+                    }
+                    batch.add(entry);
+                    batchBytes += entry.bytes;
+                    if (batchBytes >= COALESCE_BUFFER_SIZE) {
+                        complete(batch);
+                        batchBytes = 0;
+                    }
+                }
+                complete(batch);
+
+                drainScheduled.set(false);
+                // Une trame ajoutée pendant le flush : reprendre si personne d'autre ne l'a fait
+            } while (!queue.isEmpty() && drainScheduled.compareAndSet(false, true));
+        } catch (IOException e) {
+            queue.clear();
+            Runnable failure = onFailure;
+            if (failure != null) {
+                failure.run();
+            } else {
+                close();
+            }
+        }
+    }
+
+    private void complete(List<OutboundQueue.Entry> batch) throws IOException {
+        output.flush();
+        for (OutboundQueue.Entry written : batch) {
+            queue.release(written);
+            if (written.onWritten != null) {
+                written.onWritten.run();
+            }
+        }
+        batch.clear();
+    }
+
+    // Boucle de lecture du thread de la connexion, jusqu'à la fermeture.
+    // Le décodeur est incrémental : un petit tampon suffit, même pour les gros messages.
+    void readLoop(WebSocketClientHandler handler) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        while (isOpen()) {
+            awaitReadResumed();
+            int bytesRead = input.read(buffer);
+            if (bytesRead < 0) {
+                break;
+            }
+            if (bytesRead > 0) {
+                handler.onBytesReceived(buffer, bytesRead);
+            }
+        }
+    }
+
+    private void awaitReadResumed() throws IOException {
+        readGate.lock();
+        try {
+            while (readPaused && isOpen()) {
+                readResumed.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lecture interrompue");
+        } finally {
+            readGate.unlock();
+        }
+    }
+
+    @Override
+    public void setReadPaused(boolean paused) {
+        readGate.lock();
+        try {
+            readPaused = paused;
+            if (!paused) {
+                readResumed.signalAll();
+            }
+        } finally {
+            readGate.unlock();
+        }
+    }
+
+    @Override
+    public long getPendingBytes() {
+        return queue.getPendingBytes();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignorer
+        }
+        // Un lecteur suspendu doit voir la fermeture
+        setReadPaused(false);
+    }
+}
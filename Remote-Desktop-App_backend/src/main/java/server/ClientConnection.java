@@ -0,0 +1,46 @@
+package main.java.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * Transport d'une connexion WebSocket, indépendant du modèle d'E/S
+ * (socket bloquante par thread ou canal non bloquant sur un Selector).
+ *
+ * Les octets reçus sont remis au WebSocketClientHandler par le transport ;
+ * celui-ci n'écrit que par cette interface.
+ */
+interface ClientConnection {
+
+    /**
+     * Écrit les tampons dans l'ordre, en une seule écriture groupée si possible.
+     * Peut rendre la main avant l'écriture effective : onWritten est appelé
+     * une fois tous les octets remis au système (jamais si la connexion tombe).
+     * L'ordre est garanti au sein d'une classe de trafic, pas entre classes.
+     */
+    void write(ByteBuffer[] buffers, TrafficClass trafficClass, Runnable onWritten) throws IOException;
+
+    /**
+     * Comme write, mais les tampons ne sont produits qu'au moment de l'envoi,
+     * par l'unique écrivain de la connexion : l'ordre des appels à encoder est
+     * l'ordre des trames sur le réseau, toutes classes confondues.
+     * estimatedBytes sert à la limite de la file et au partage du débit.
+     */
+    void write(Supplier<ByteBuffer[]> encoder, long estimatedBytes, TrafficClass trafficClass, Runnable onWritten)
+            throws IOException;
+
+    /**
+     * Suspend ou reprend la lecture de la connexion (voies de traitement
+     * saturées). Appelable depuis n'importe quel thread ; quelques octets déjà
+     * en cours de lecture peuvent encore être remis après la suspension.
+     */
+    void setReadPaused(boolean paused);
+
+    // Octets acceptés mais pas encore remis au système
+    long getPendingBytes();
+
+    boolean isOpen();
+
+    void close();
+}
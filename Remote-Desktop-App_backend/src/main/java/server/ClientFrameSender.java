@@ -0,0 +1,179 @@
+package main.java.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import main.java.capture.TileUpdate;
+
+/**
+ * File d'envoi d'images d'un client, de profondeur un : une nouvelle image
+ * remplace celle qui n'est pas encore partie. L'envoi se fait hors du thread
+ * de diffusion, à la cadence décidée par l'AdaptiveStreamController.
+ *
+ * Les mises à jour par tuiles dépendent de la précédente : une mise à jour
+ * écrasée est fusionnée dans la suivante (les tuiles d'une même position,
+ * la plus récente l'emporte) au lieu d'être perdue.
+ *
+ * Seule une image remplacée pendant qu'une écriture est en cours compte
+ * comme abandonnée pour l'adaptation : un remplacement dû à la cadence du
+ * client (capture plus rapide que son FPS cible) est normal.
+ *
+ * Aucun thread n'attend entre deux images : l'intervalle est planifié, et
+ * l'image suivante n'est envoyée qu'une fois la précédente remise au système
+ * (immédiatement sur socket bloquante, à la fin de l'écriture sur NIO).
+ */
+public class ClientFrameSender {
+
+    private static class PendingFrame {
+        final PreparedFrame frame;
+        final boolean keyframe;
+        final boolean delta;
+        // Mise à jour par tuiles d'origine, conservée pour la fusion (null sinon)
+        final TileUpdate tiles;
+        final long frameId;
+        final int width;
+        final int height;
+
+        PendingFrame(PreparedFrame frame, boolean keyframe, boolean delta) {
+            this(frame, keyframe, delta, null, 0, 0, 0);
+        }
+
+        PendingFrame(PreparedFrame frame, boolean keyframe, boolean delta, TileUpdate tiles, long frameId,
+                     int width, int height) {
+            this.frame = frame;
+            this.keyframe = keyframe;
+            this.delta = delta;
+            this.tiles = tiles;
+            this.frameId = frameId;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final WebSocketClientHandler client;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final AdaptiveStreamController controller = new AdaptiveStreamController();
+    private final AtomicReference<PendingFrame> pending = new AtomicReference<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile boolean writing = false;
+    private volatile long lastSendTime = 0;
+
+    public ClientFrameSender(WebSocketClientHandler client, ExecutorService executor,
+                             ScheduledExecutorService scheduler) {
+        this.client = client;
+        this.executor = executor;
+        this.scheduler = scheduler;
+    }
+
+    // Ne bloque jamais : dépose l'image et planifie l'envoi si nécessaire
+    public void offer(PreparedFrame frame, boolean keyframe, boolean delta) {
+        offer(new PendingFrame(frame, keyframe, delta));
+    }
+
+    // Mise à jour partielle : conservée sous forme de tuiles pour pouvoir être fusionnée
+    public void offerTiles(PreparedFrame frame, TileUpdate tiles, long frameId, int width, int height) {
+        offer(new PendingFrame(frame, false, true, tiles, frameId, width, height));
+    }
+
+    private void offer(PendingFrame frame) {
+        if (frame.delta && client.needsKeyframe()) {
+            return;
+        }
+
+        PendingFrame previous;
+        PendingFrame replacement;
+        do {
+            previous = pending.get();
+            replacement = previous != null && previous.delta && frame.delta ? merge(previous, frame) : frame;
+        } while (!pending.compareAndSet(previous, replacement));
+
+        if (previous != null) {
+            if (writing) {
+                controller.recordDrop();
+            }
+            // Une image clé remplace entièrement ce qui précède ; une mise à jour partielle ne remplace
+            // une image clé en attente que si elle a pu être fusionnée, sinon le client repart d'une image clé
+            if (replacement == frame && frame.delta) {
+                client.requestKeyframe();
+            }
+        }
+        if (draining.compareAndSet(false, true)) {
+            scheduleNext();
+        }
+    }
+
+    // Tuiles alignées sur une grille fixe : à même position, la plus récente l'emporte.
+    // Retourne la nouvelle mise à jour telle quelle si la fusion est impossible (dimensions changées).
+    private static PendingFrame merge(PendingFrame older, PendingFrame newer) {
+        if (older.tiles == null || newer.tiles == null
+                || older.width != newer.width || older.height != newer.height) {
+            return newer;
+        }
+        Map<Long, TileUpdate.Tile> tiles = new LinkedHashMap<>();
+        for (TileUpdate.Tile tile : older.tiles.getTiles()) {
+            tiles.put(((long) tile.x << 32) | tile.y, tile);
+        }
+        for (TileUpdate.Tile tile : newer.tiles.getTiles()) {
+            tiles.put(((long) tile.x << 32) | tile.y, tile);
+        }
+        TileUpdate merged = new TileUpdate(false, new ArrayList<>(tiles.values()));
+        return new PendingFrame(ScreenFrameProtocol.prepareTileFrame(newer.frameId, newer.width, newer.height, merged),
+                false, true, merged, newer.frameId, newer.width, newer.height);
+    }
+
+    // Respecte la cadence du client : attente planifiée, jamais de thread endormi
+    private void scheduleNext() {
+        long wait = lastSendTime + controller.getFrameIntervalMillis() - System.currentTimeMillis();
+        try {
+            if (wait > 0) {
+                scheduler.schedule(() -> executor.execute(this::sendNext), wait, TimeUnit.MILLISECONDS);
+            } else {
+                executor.execute(this::sendNext);
+            }
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+        }
+    }
+
+    private void sendNext() {
+        PendingFrame next = pending.getAndSet(null);
+        while (next != null && next.delta && client.needsKeyframe()) {
+            next = pending.getAndSet(null);
+        }
+
+        if (next == null || !client.isConnected()) {
+            draining.set(false);
+            // Une image a pu arriver entre la dernière lecture et la libération
+            if (pending.get() != null && client.isConnected() && draining.compareAndSet(false, true)) {
+                scheduleNext();
+            }
+            return;
+        }
+
+        // Marqué avant l'écriture : une mise à jour écrasée pendant l'envoi redemandera une image clé
+        if (next.keyframe) {
+            client.markKeyframeSent();
+        }
+
+        controller.recordWriteStart(next.frame.length(), client.getConnection().getPendingBytes());
+        writing = true;
+        long start = System.nanoTime();
+        client.sendPrepared(next.frame, () -> {
+            writing = false;
+            controller.recordWriteEnd(System.nanoTime() - start);
+            lastSendTime = System.currentTimeMillis();
+            scheduleNext();
+        });
+    }
+
+    public AdaptiveStreamController getController() {
+        return controller;
+    }
+}
@@ -0,0 +1,83 @@
+package main.java.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registre des connexions, indexé par identifiant client.
+ *
+ * La liste des clients authentifiés est un instantané immuable, reconstruit
+ * et publié atomiquement à chaque changement d'appartenance (rare) : les
+ * diffusions et les ticks de capture la lisent sans copie ni filtrage.
+ */
+public class ClientRegistry {
+    private final ConcurrentHashMap<String, WebSocketClientHandler> clientsById = new ConcurrentHashMap<>();
+
+    // Ordre d'authentification conservé (ordre d'affichage de USER_LIST)
+    private volatile List<WebSocketClientHandler> authenticatedSnapshot = List.of();
+
+    public void add(WebSocketClientHandler client) {
+        clientsById.put(client.getClientId(), client);
+    }
+
+    // Retourne false si ce client n'était plus (ou pas) enregistré
+    public boolean remove(WebSocketClientHandler client) {
+        if (!clientsById.remove(client.getClientId(), client)) {
+            return false;
+        }
+        removeFromSnapshot(client.getClientId());
+        return true;
+    }
+
+    public WebSocketClientHandler get(String clientId) {
+        return clientsById.get(clientId);
+    }
+
+    public Collection<WebSocketClientHandler> getAll() {
+        return clientsById.values();
+    }
+
+    public int size() {
+        return clientsById.size();
+    }
+
+    public synchronized void markAuthenticated(String clientId) {
+        WebSocketClientHandler client = clientsById.get(clientId);
+        if (client == null || authenticatedSnapshot.contains(client)) {
+            return;
+        }
+        List<WebSocketClientHandler> next = new ArrayList<>(authenticatedSnapshot.size() + 1);
+        next.addAll(authenticatedSnapshot);
+        next.add(client);
+        authenticatedSnapshot = List.copyOf(next);
+    }
+
+    public void markUnauthenticated(String clientId) {
+        removeFromSnapshot(clientId);
+    }
+
+    private synchronized void removeFromSnapshot(String clientId) {
+        List<WebSocketClientHandler> current = authenticatedSnapshot;
+        List<WebSocketClientHandler> next = new ArrayList<>(current.size());
+        for (WebSocketClientHandler client : current) {
+            if (!client.getClientId().equals(clientId)) {
+                next.add(client);
+            }
+        }
+        if (next.size() != current.size()) {
+            authenticatedSnapshot = List.copyOf(next);
+        }
+    }
+
+    // Instantané immuable : à lire une fois par diffusion, sans le copier
+    public List<WebSocketClientHandler> getAuthenticated() {
+        return authenticatedSnapshot;
+    }
+
+    public boolean isAuthenticated(String clientId) {
+        WebSocketClientHandler client = clientsById.get(clientId);
+        return client != null && authenticatedSnapshot.contains(client);
+    }
+}
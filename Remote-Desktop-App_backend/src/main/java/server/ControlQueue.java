@@ -1,23 +1,58 @@
 package main.java.server;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
-
+import main.java.models.Session;
+import main.java.utils.TimerWheel;
+
+/**
+ * File d'attente du contrôle à distance : un seul contrôleur à la fois, les
+ * autres attendent leur tour.
+ *
+ * Les modifications de la file (demande, libération, rotation, timeouts)
+ * restent sérialisées sur le moniteur de l'objet. Les lectures du chemin
+ * chaud, hasControl() et refreshActivity() appelés à chaque événement
+ * d'entrée, ne prennent aucun verrou : le contrôleur est une référence
+ * volatile et l'activité une cellule horodatée par client.
+ *
+ * Les deux limites du contrôleur (durée maximale, inactivité) sont des
+ * échéances de la roue temporelle du serveur, annulées à chaque passage de
+ * main. L'échéance d'inactivité relit l'horodatage à son expiration et se
+ * reprogramme si le contrôleur a été actif entre-temps : rafraîchir
+ * l'activité reste une simple écriture.
+ *
+ * La position de chaque client en attente est tenue à jour dans une table
+ * (lecture O(1), sans verrou). Les notifications (contrôle accordé ou
+ * libéré, nouvelles positions) sont accumulées sous le moniteur puis
+ * envoyées après sa libération : une position n'est envoyée qu'au client
+ * dont elle a changé, et seule la dernière valeur part si plusieurs
+ * changements se suivent.
+ *
+ * Le bureau n'a qu'un clavier et une souris : une seule salle du processus
+ * détient l'entrée (voir WebSocketServer). Dans les autres salles, une
+ * demande de contrôle place le client en file d'attente sans jamais lui
+ * accorder la main, jusqu'à ce que la salle récupère l'entrée.
+ */
 public class ControlQueue {
-    private BlockingQueue<String> waitingQueue = new LinkedBlockingQueue<>();
-    private String currentController = null;
-    private Map<String, Long> lastActivityTime = new ConcurrentHashMap<>();
+    // Ordre d'attente, protégé par le moniteur
+    private List<String> waitingQueue = new ArrayList<>();
+    // Position (1 = prochain) de chaque client en attente ; écrite sous le moniteur, lue sans verrou
+    private Map<String, Integer> queuePositions = new ConcurrentHashMap<>();
+    // Écrit sous le moniteur, lu sans verrou
+    private volatile String currentController = null;
+    // Vrai si la salle détient l'entrée du bureau ; écrit sous le moniteur
+    private volatile boolean inputEnabled = true;
+    private Map<String, AtomicLong> lastActivityTime = new ConcurrentHashMap<>();
     private Map<String, String> clientNames = new ConcurrentHashMap<>();
-    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private ScheduledFuture<?> currentTimeoutTask = null;
+    private final TimerWheel timers;
+    // Échéances du contrôleur courant, protégées par le moniteur
+    private TimerWheel.Timeout controlTimeout = null;
+    private TimerWheel.Timeout inactivityTimeout = null;
 
     // ✅ CONFIGURATION MODIFIÉE : Temps selon vos besoins
     private static final long CONTROL_TIMEOUT = 240000; // ✅ 4 minutes (240 secondes)
@@ -25,26 +60,52 @@ public class ControlQueue {
 
     // ✅ STATISTIQUES de concurrence
     private volatile int totalRequests = 0;
-    private volatile int currentWaitingClients = 0;
     private volatile long sessionStartTime = 0;
 
     // ✅ RÉFÉRENCE au serveur pour notifications
     private WebSocketServer server;
+    private Session session;
+
+    // Notifications en attente d'envoi, protégées par le moniteur
+    private List<ControlChange> pendingControlChanges = new ArrayList<>();
+    private Map<String, Integer> pendingPositions = new LinkedHashMap<>();
+    // Un seul thread envoie à la fois : les notifications partent dans l'ordre où elles ont été produites
+    private final ReentrantLock dispatchLock = new ReentrantLock();
+
+    private static final class ControlChange {
+        final String clientId;
+        final boolean granted;
+
+        ControlChange(String clientId, boolean granted) {
+            this.clientId = clientId;
+            this.granted = granted;
+        }
+    }
 
-    public ControlQueue() {
-        // Démarrer le vérificateur périodique d'activité
-        startActivityChecker();
+    public ControlQueue(TimerWheel timers) {
+        this.timers = timers;
     }
 
-    public void setServer(WebSocketServer server) {
+    // Salle dont cette file gère le contrôle : la liste des utilisateurs rediffusée est la sienne
+    public void setServer(WebSocketServer server, Session session) {
         this.server = server;
+        this.session = session;
     }
 
     // ✅ MÉTHODE PRINCIPALE : Demander le contrôle
-    public synchronized boolean requestControl(String clientId) {
+    public boolean requestControl(String clientId) {
+        boolean granted;
+        synchronized (this) {
+            granted = requestControlLocked(clientId);
+        }
+        dispatchNotifications();
+        return granted;
+    }
+
+    private boolean requestControlLocked(String clientId) {
         totalRequests++;
 
-        if (currentController == null) {
+        if (currentController == null && inputEnabled) {
             // ✅ ACCORDER LE CONTRÔLE IMMÉDIATEMENT
             currentController = clientId;
             sessionStartTime = System.currentTimeMillis();
@@ -60,34 +121,39 @@ public class ControlQueue {
             notifyControlChange(clientId, true);
             return true;
 
-        } else if (currentController.equals(clientId)) {
+        } else if (clientId.equals(currentController)) {
             // ✅ RAFRAÎCHIR L'ACTIVITÉ du contrôleur actuel
             updateLastActivity(clientId);
             return true;
 
         } else {
             // ✅ AJOUTER À LA FILE D'ATTENTE
-            if (!waitingQueue.contains(clientId)) {
-                waitingQueue.offer(clientId);
-                currentWaitingClients++;
+            if (!queuePositions.containsKey(clientId)) {
+                waitingQueue.add(clientId);
+                updateQueuePositions(waitingQueue.size() - 1);
 
                 System.out.println("⏳ CLIENT MIS EN FILE D'ATTENTE");
                 System.out.println("   Client: " + clientId);
                 System.out.println("   Position: " + waitingQueue.size());
-                System.out.println("   Contrôleur actuel: " + currentController);
+                System.out.println("   Contrôleur actuel: "
+                        + (inputEnabled ? currentController : "aucun (entrée détenue par une autre salle)"));
 
                 long remainingTime = CONTROL_TIMEOUT - (System.currentTimeMillis() - sessionStartTime);
                 System.out.println("   Temps restant estimé: " + Math.max(0, remainingTime/1000) + "s");
-
-                // Notifier la position dans la file
-                notifyQueuePosition(clientId, waitingQueue.size());
             }
             return false;
         }
     }
 
     // ✅ MÉTHODE : Libérer le contrôle (SANS fermer la session)
-    public synchronized void releaseControl(String clientId) {
+    public void releaseControl(String clientId) {
+        synchronized (this) {
+            releaseControlLocked(clientId);
+        }
+        dispatchNotifications();
+    }
+
+    private void releaseControlLocked(String clientId) {
         if (currentController != null && currentController.equals(clientId)) {
             cancelCurrentTimer();
 
@@ -105,36 +171,39 @@ public class ControlQueue {
             // Passer au suivant
             assignNextController();
 
-        } else if (waitingQueue.contains(clientId)) {
-            // ✅ RETIRER DE LA FILE D'ATTENTE
-            waitingQueue.remove(clientId);
-            currentWaitingClients--;
+        } else if (removeFromWaitingQueue(clientId)) {
+            // ✅ RETIRÉ DE LA FILE D'ATTENTE (positions suivantes mises à jour)
             System.out.println("❌ Client retiré de la file d'attente: " + clientId);
-
-            // Mettre à jour les positions dans la file
-            updateQueuePositions();
         }
     }
 
-    // ✅ MÉTHODE : Vérifier si un client a le contrôle
-    public synchronized boolean hasControl(String clientId) {
-        if (currentController != null && currentController.equals(clientId)) {
-            updateLastActivity(clientId);
-            return true;
-        }
-        return false;
+    // ✅ MÉTHODE : Vérifier si un client a le contrôle (sans verrou)
+    // Lecture pure : seuls les événements d'entrée (refreshActivity) comptent comme activité,
+    // pas les diffusions de la liste des utilisateurs
+    public boolean hasControl(String clientId) {
+        return clientId != null && clientId.equals(currentController);
     }
 
-    // ✅ MÉTHODE : Rafraîchir l'activité (pour éviter timeout d'inactivité)
-    public synchronized void refreshActivity(String clientId) {
-        if (currentController != null && currentController.equals(clientId)) {
-            updateLastActivity(clientId);
+    // ✅ MÉTHODE : Rafraîchir l'activité (pour éviter timeout d'inactivité), sans verrou
+    public void refreshActivity(String clientId) {
+        if (hasControl(clientId)) {
+            AtomicLong cell = lastActivityTime.get(clientId);
+            if (cell != null) {
+                cell.set(System.currentTimeMillis());
+            }
         }
     }
 
     // ✅ MÉTHODE : Supprimer un client (déconnexion)
-    public synchronized void removeClient(String clientId) {
-        waitingQueue.remove(clientId);
+    public void removeClient(String clientId) {
+        synchronized (this) {
+            removeClientLocked(clientId);
+        }
+        dispatchNotifications();
+    }
+
+    private void removeClientLocked(String clientId) {
+        removeFromWaitingQueue(clientId);
         lastActivityTime.remove(clientId);
         clientNames.remove(clientId);
 
@@ -155,30 +224,53 @@ public class ControlQueue {
             // Passer au suivant
             assignNextController();
         }
-
-        if (waitingQueue.contains(clientId)) {
-            currentWaitingClients--;
-            updateQueuePositions();
-        }
     }
 
     // ✅ MÉTHODE : Forcer la libération (admin)
-    public synchronized boolean forceRelease(String adminId) {
-        if (currentController != null) {
+    public boolean forceRelease(String adminId) {
+        synchronized (this) {
+            if (currentController == null) {
+                return false;
+            }
             String forcedClient = currentController;
 
             System.out.println("🔨 LIBÉRATION FORCÉE PAR ADMIN");
             System.out.println("   Admin: " + adminId);
             System.out.println("   Client forcé: " + forcedClient);
 
-            releaseControl(forcedClient);
-            return true;
+            releaseControlLocked(forcedClient);
+        }
+        dispatchNotifications();
+        return true;
+    }
+
+    /**
+     * Donne ou retire à cette salle l'entrée du bureau. En la perdant, le
+     * contrôleur actuel est libéré et la file reste en attente ; en la
+     * récupérant, le premier client en attente reçoit la main.
+     */
+    public void setInputEnabled(boolean enabled) {
+        synchronized (this) {
+            if (inputEnabled == enabled) {
+                return;
+            }
+            inputEnabled = enabled;
+            if (!enabled && currentController != null) {
+                System.out.println("🔒 Entrée du bureau retirée à la salle : contrôle libéré pour " + currentController);
+                releaseControlLocked(currentController);
+            } else if (enabled && currentController == null) {
+                assignNextController();
+            }
         }
-        return false;
+        dispatchNotifications();
+    }
+
+    public boolean isInputEnabled() {
+        return inputEnabled;
     }
 
     // ✅ MÉTHODES : Getters pour statistiques
-    public synchronized String getCurrentController() {
+    public String getCurrentController() {
         return currentController;
     }
 
@@ -190,24 +282,19 @@ public class ControlQueue {
         return waitingQueue.toArray(new String[0]);
     }
 
-    public synchronized int getQueuePosition(String clientId) {
-        if (currentController != null && currentController.equals(clientId)) {
+    // Sans verrou : 0 pour le contrôleur, 1.. en attente, -1 sinon
+    public int getQueuePosition(String clientId) {
+        if (hasControl(clientId)) {
             return 0; // Contrôle actuel
         }
-
-        int position = 1;
-        for (String client : waitingQueue) {
-            if (client.equals(clientId)) {
-                return position;
-            }
-            position++;
-        }
-        return -1; // Pas dans la file
+        Integer position = queuePositions.get(clientId);
+        return position != null ? position : -1; // -1 : pas dans la file
     }
 
-    public synchronized long getRemainingControlTime() {
-        if (currentController != null && sessionStartTime > 0) {
-            long elapsed = System.currentTimeMillis() - sessionStartTime;
+    public long getRemainingControlTime() {
+        long start = sessionStartTime;
+        if (currentController != null && start > 0) {
+            long elapsed = System.currentTimeMillis() - start;
             return Math.max(0, CONTROL_TIMEOUT - elapsed);
         }
         return 0;
@@ -218,6 +305,7 @@ public class ControlQueue {
         System.out.println("\n📊 ÉTAT DE LA CONCURRENCE");
         System.out.println("══════════════════════════════");
         System.out.println("   Contrôleur actuel: " + (currentController != null ? currentController : "Aucun"));
+        System.out.println("   Entrée du bureau: " + (inputEnabled ? "détenue par cette salle" : "détenue par une autre salle"));
 
         if (currentController != null) {
             long remainingTime = getRemainingControlTime();
@@ -239,47 +327,93 @@ public class ControlQueue {
         System.out.println("══════════════════════════════\n");
     }
 
-    // ✅ MÉTHODES PRIVÉES : Gestion interne
+    // ✅ MÉTHODES PRIVÉES : Gestion interne (appelées sous le moniteur)
 
     private void updateLastActivity(String clientId) {
-        lastActivityTime.put(clientId, System.currentTimeMillis());
+        lastActivityTime.computeIfAbsent(clientId, id -> new AtomicLong())
+                .set(System.currentTimeMillis());
+    }
+
+    // Retourne false si le client n'était pas en attente
+    private boolean removeFromWaitingQueue(String clientId) {
+        Integer position = queuePositions.remove(clientId);
+        if (position == null) {
+            return false;
+        }
+        int index = position - 1;
+        waitingQueue.remove(index);
+        pendingPositions.remove(clientId);
+        updateQueuePositions(index);
+        return true;
     }
 
     private void assignNextController() {
-        String nextClient = waitingQueue.poll();
-        if (nextClient != null) {
-            currentController = nextClient;
-            currentWaitingClients--;
-            sessionStartTime = System.currentTimeMillis();
-            updateLastActivity(nextClient);
-            startControlTimer();
+        if (waitingQueue.isEmpty() || !inputEnabled) {
+            return;
+        }
+        String nextClient = waitingQueue.remove(0);
+        queuePositions.remove(nextClient);
+        pendingPositions.remove(nextClient);
 
-            System.out.println("🔄 ROTATION DU CONTRÔLE (CONCURRENCE)");
-            System.out.println("   Nouveau contrôleur: " + nextClient);
-            System.out.println("   Clients restants en attente: " + waitingQueue.size());
+        currentController = nextClient;
+        sessionStartTime = System.currentTimeMillis();
+        updateLastActivity(nextClient);
+        startControlTimer();
 
-            // Notifier le nouveau contrôleur
-            notifyControlChange(nextClient, true);
+        System.out.println("🔄 ROTATION DU CONTRÔLE (CONCURRENCE)");
+        System.out.println("   Nouveau contrôleur: " + nextClient);
+        System.out.println("   Clients restants en attente: " + waitingQueue.size());
 
-            // Mettre à jour les positions
-            updateQueuePositions();
-        }
+        // Notifier le nouveau contrôleur
+        notifyControlChange(nextClient, true);
+
+        // Mettre à jour les positions
+        updateQueuePositions(0);
     }
 
     private void startControlTimer() {
         cancelCurrentTimer();
 
-        currentTimeoutTask = scheduler.schedule(() -> {
-            synchronized (this) {
+        String controller = currentController;
+        controlTimeout = timers.schedule(() -> onControlTimeout(controller), CONTROL_TIMEOUT);
+        inactivityTimeout = timers.schedule(() -> onInactivityDeadline(controller), INACTIVITY_TIMEOUT);
+    }
+
+    private void cancelCurrentTimer() {
+        if (controlTimeout != null) {
+            controlTimeout.cancel();
+            controlTimeout = null;
+        }
+        if (inactivityTimeout != null) {
+            inactivityTimeout.cancel();
+            inactivityTimeout = null;
+        }
+    }
+
+    // Sur le thread de la roue ; le contrôleur a pu changer depuis la programmation
+    private void onControlTimeout(String controller) {
+        synchronized (this) {
+            if (controller.equals(currentController)) {
                 checkControlTimeout();
             }
-        }, CONTROL_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        dispatchNotificationsLater();
     }
 
-    private void cancelCurrentTimer() {
-        if (currentTimeoutTask != null && !currentTimeoutTask.isDone()) {
-            currentTimeoutTask.cancel(false);
-            currentTimeoutTask = null;
+    private void onInactivityDeadline(String controller) {
+        synchronized (this) {
+            if (controller.equals(currentController)) {
+                checkInactivityTimeout();
+            }
+        }
+        dispatchNotificationsLater();
+    }
+
+    // Envois et éventuelles déconnexions hors du thread de la roue, qui ne fait que changer l'état
+    private void dispatchNotificationsLater() {
+        WebSocketServer target = server;
+        if (target != null && hasPendingNotifications()) {
+            target.getClientExecutor().execute(this::dispatchNotifications);
         }
     }
 
@@ -293,6 +427,7 @@ public class ControlQueue {
                 System.out.println("   Durée: " + (sessionDuration/1000) + "s");
                 System.out.println("   Rotation automatique vers le suivant");
 
+                cancelCurrentTimer();
                 String timedOutClient = currentController;
                 currentController = null;
                 sessionStartTime = 0;
@@ -302,23 +437,20 @@ public class ControlQueue {
 
                 // Passer au suivant
                 assignNextController();
+            } else {
+                // Horloges murale et monotone légèrement décalées : reprogrammer le reliquat
+                String controller = currentController;
+                controlTimeout = timers.schedule(() -> onControlTimeout(controller),
+                        CONTROL_TIMEOUT - sessionDuration);
             }
         }
     }
 
-    private void startActivityChecker() {
-        scheduler.scheduleAtFixedRate(() -> {
-            synchronized (this) {
-                checkInactivityTimeout();
-            }
-        }, 10, 10, TimeUnit.SECONDS); // Vérifier toutes les 10 secondes
-    }
-
     private void checkInactivityTimeout() {
         if (currentController != null) {
-            Long lastActivity = lastActivityTime.get(currentController);
+            AtomicLong lastActivity = lastActivityTime.get(currentController);
             if (lastActivity != null) {
-                long inactivityDuration = System.currentTimeMillis() - lastActivity;
+                long inactivityDuration = System.currentTimeMillis() - lastActivity.get();
 
                 if (inactivityDuration >= INACTIVITY_TIMEOUT) {
                     System.out.println("😴 TIMEOUT D'INACTIVITÉ");
@@ -326,6 +458,7 @@ public class ControlQueue {
                     System.out.println("   Inactivité: " + (inactivityDuration/1000) + "s");
                     System.out.println("   Rotation automatique vers le suivant");
 
+                    cancelCurrentTimer();
                     String inactiveClient = currentController;
                     currentController = null;
                     sessionStartTime = 0;
@@ -335,43 +468,75 @@ public class ControlQueue {
 
                     // Passer au suivant
                     assignNextController();
+                } else {
+                    // Actif entre-temps : nouvelle échéance à la fin de la période depuis la dernière activité
+                    String controller = currentController;
+                    inactivityTimeout = timers.schedule(() -> onInactivityDeadline(controller),
+                            INACTIVITY_TIMEOUT - inactivityDuration);
                 }
             }
         }
     }
 
-    private void updateQueuePositions() {
-        int position = 1;
-        for (String clientId : waitingQueue) {
-            notifyQueuePosition(clientId, position);
-            position++;
+    // Renumérote à partir de l'indice donné ; seuls les clients dont la position change sont notifiés
+    private void updateQueuePositions(int fromIndex) {
+        for (int i = fromIndex; i < waitingQueue.size(); i++) {
+            String clientId = waitingQueue.get(i);
+            Integer position = i + 1;
+            if (!position.equals(queuePositions.put(clientId, position))) {
+                pendingPositions.put(clientId, position);
+            }
         }
     }
 
-    // ✅ MÉTHODES DE NOTIFICATION (à implémenter dans WebSocketServer)
+    // ✅ MÉTHODES DE NOTIFICATION (envoyées hors du moniteur par dispatchNotifications)
     private void notifyControlChange(String clientId, boolean granted) {
-        if (server != null) {
-            server.notifyControlChange(clientId, granted);
-        }
+        pendingControlChanges.add(new ControlChange(clientId, granted));
     }
 
-    private void notifyQueuePosition(String clientId, int position) {
-        if (server != null) {
-            server.notifyQueuePosition(clientId, position);
+    /**
+     * Envoie les notifications accumulées, hors du moniteur. Si un autre
+     * thread est déjà en train d'envoyer, il reprendra celles-ci après les
+     * siennes : l'appelant ne bloque jamais.
+     */
+    private void dispatchNotifications() {
+        while (hasPendingNotifications() && dispatchLock.tryLock()) {
+            try {
+                List<ControlChange> controlChanges;
+                Map<String, Integer> positions;
+                synchronized (this) {
+                    controlChanges = pendingControlChanges;
+                    positions = pendingPositions;
+                    pendingControlChanges = new ArrayList<>();
+                    pendingPositions = new LinkedHashMap<>();
+                }
+                if (server == null) {
+                    continue;
+                }
+                for (ControlChange change : controlChanges) {
+                    server.notifyControlChange(change.clientId, change.granted);
+                }
+                for (Map.Entry<String, Integer> entry : positions.entrySet()) {
+                    server.notifyQueuePosition(entry.getKey(), entry.getValue());
+                }
+                // Une seule diffusion de la liste pour tout le lot
+                if (!controlChanges.isEmpty()) {
+                    server.broadcastUserList(session);
+                }
+            } finally {
+                dispatchLock.unlock();
+            }
         }
     }
 
-    // ✅ MÉTHODE : Arrêt propre
+    private synchronized boolean hasPendingNotifications() {
+        return !pendingControlChanges.isEmpty() || !pendingPositions.isEmpty();
+    }
+
+    // ✅ MÉTHODE : Arrêt propre (la roue temporelle appartient au serveur)
     public void shutdown() {
-        cancelCurrentTimer();
-        scheduler.shutdown();
-        try {
-            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            scheduler.shutdownNow();
-            Thread.currentThread().interrupt();
+        synchronized (this) {
+            cancelCurrentTimer();
         }
 
         System.out.println("🛑 ControlQueue arrêté proprement");
@@ -381,4 +546,4 @@ public class ControlQueue {
     public void setClientName(String clientId, String displayName) {
         clientNames.put(clientId, displayName);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+package main.java.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Message reçu, déjà classé, avec un curseur sur ses arguments.
+ *
+ * Les arguments sont séparés par ':' et lus directement dans les octets
+ * reçus : les nombres sont analysés sur place et seuls les champs réellement
+ * utilisés comme texte deviennent des String (pas de substring ni de split).
+ */
+final class InboundMessage {
+    private static final byte SEPARATOR = ':';
+
+    private final MessageType type;
+    private final byte[] data;
+    private final int length;
+    private int position;
+
+    private InboundMessage(MessageType type, byte[] data, int length, int payloadOffset) {
+        this.type = type;
+        this.data = data;
+        this.length = length;
+        this.position = payloadOffset;
+    }
+
+    /**
+     * Classe un message WebSocket complet. Le tableau doit appartenir au
+     * message (le traitement est asynchrone). Le type est null si inconnu.
+     */
+    static InboundMessage parse(boolean binary, byte[] data, int length) {
+        if (binary) {
+            MessageType type = length > 0 ? MessageType.fromOpcode(data[0]) : null;
+            return new InboundMessage(type, data, length, 1);
+        }
+
+        MessageType type = MessageType.fromText(data, length);
+        int offset = 0;
+        if (type != null && type.hasArguments()) {
+            while (data[offset] != SEPARATOR) {
+                offset++;
+            }
+            offset++;
+        }
+        return new InboundMessage(type, data, length, offset);
+    }
+
+    MessageType getType() {
+        return type;
+    }
+
+    // Vrai tant qu'un champ reste à lire (y compris un dernier champ vide après ':')
+    boolean hasNext() {
+        return position <= length;
+    }
+
+    // Nombre de champs restants
+    int remainingFields() {
+        if (!hasNext()) {
+            return 0;
+        }
+        int fields = 1;
+        for (int i = position; i < length; i++) {
+            if (data[i] == SEPARATOR) {
+                fields++;
+            }
+        }
+        return fields;
+    }
+
+    String nextField() {
+        int start = position;
+        int end = fieldEnd();
+        return new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    long nextLong() {
+        int start = position;
+        int end = fieldEnd();
+        if (start == end) {
+            throw new NumberFormatException("Champ numérique vide");
+        }
+
+        boolean negative = data[start] == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Champ numérique invalide");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    int nextInt() {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Entier hors limites");
+        }
+        return (int) value;
+    }
+
+    // Tout ce qui reste, séparateurs compris
+    String rest() {
+        int start = Math.min(position, length);
+        position = length + 1;
+        return new String(data, start, length - start, StandardCharsets.UTF_8);
+    }
+
+    // Reste du message décodé depuis le Base64, sans String intermédiaire
+    byte[] restAsBase64() {
+        int start = Math.min(position, length);
+        position = length + 1;
+        ByteBuffer decoded = Base64.getDecoder().decode(ByteBuffer.wrap(data, start, length - start));
+        byte[] array = decoded.array();
+        return decoded.remaining() == array.length ? array : Arrays.copyOf(array, decoded.remaining());
+    }
+
+    // Vrai si le reste, vu comme une liste séparée par 'separator', contient l'élément (espaces ignorés)
+    boolean restContainsItem(String item, char separator) {
+        byte[] expected = item.getBytes(StandardCharsets.UTF_8);
+        int start = Math.min(position, length);
+        while (start <= length) {
+            int end = start;
+            while (end < length && data[end] != separator) {
+                end++;
+            }
+            int from = start;
+            int to = end;
+            while (from < to && data[from] == ' ') from++;
+            while (to > from && data[to - 1] == ' ') to--;
+            if (to - from == expected.length
+                    && Arrays.equals(data, from, to, expected, 0, expected.length)) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    // Fin du champ courant ; avance le curseur après le séparateur
+    private int fieldEnd() {
+        if (!hasNext()) {
+            throw new IllegalArgumentException("Champ manquant");
+        }
+        int end = position;
+        while (end < length && data[end] != SEPARATOR) {
+            end++;
+        }
+        position = end + 1;
+        return end;
+    }
+}
@@ -0,0 +1,141 @@
+package main.java.server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Messages client → serveur, avec leur clé texte et leur opcode binaire.
+ *
+ * En texte, la clé est ce qui précède le premier ':' (ou le message entier
+ * pour les messages sans argument) ; en binaire, le premier octet est
+ * l'opcode et les arguments suivent dans le même format que le texte.
+ * La recherche se fait sur les octets reçus, sans créer de String.
+ */
+enum MessageType {
+    INPUT_EVENT("INPUT_EVENT", 0x01, true, true, Lane.INPUT),
+    AUTHENTICATE("AUTHENTICATE", 0x02, true, false, Lane.INPUT),
+    CAPABILITIES("CAPABILITIES", 0x03, true, false, Lane.INPUT),
+    END_SESSION("END_SESSION", 0x04, false, false, Lane.CHAT),
+    PING("PING", 0x05, false, true, Lane.INPUT),
+    CHAT_MESSAGE("CHAT_MESSAGE", 0x10, true, false, Lane.CHAT),
+    REQUEST_USER_LIST("REQUEST_USER_LIST", 0x11, false, false, Lane.CHAT),
+    FILE_UPLOAD_START("FILE_UPLOAD_START", 0x20, true, false, Lane.FILE),
+    FILE_CHUNK("FILE_CHUNK", 0x21, true, false, Lane.FILE),
+    REQUEST_FILE_LIST("REQUEST_FILE_LIST", 0x22, false, false, Lane.FILE),
+    DOWNLOAD_FILE("DOWNLOAD_FILE", 0x23, true, false, Lane.FILE),
+    REQUEST_CHUNK("REQUEST_CHUNK", 0x24, true, false, Lane.FILE),
+    REQUEST_CONTROL("REQUEST_CONTROL", 0x30, false, true, Lane.INPUT),
+    RELEASE_CONTROL("RELEASE_CONTROL", 0x31, false, true, Lane.INPUT),
+    SET_CAPTURE_PROFILE("SET_CAPTURE_PROFILE", 0x40, true, true, Lane.INPUT),
+    SET_CODEC("SET_CODEC", 0x41, true, true, Lane.INPUT),
+    SET_TIER("SET_TIER", 0x42, true, true, Lane.INPUT);
+
+    /**
+     * Voie de traitement côté serveur. Chaque voie est ordonnée par client ;
+     * les voies avancent indépendamment l'une de l'autre.
+     */
+    enum Lane {
+        // Entrées, contrôle et réglages de session : courts et sensibles à la latence
+        INPUT,
+        // Lectures et écritures disque, sur un pool borné
+        FILE,
+        // Chat, listes et fin de session (qui peut attendre)
+        CHAT
+    }
+
+    private static final int TABLE_SIZE = 64; // puissance de 2, au moins 2x le nombre de types
+    private static final int MAX_KEY_LENGTH;
+    private static final MessageType[] BY_HASH = new MessageType[TABLE_SIZE];
+    private static final MessageType[] BY_OPCODE = new MessageType[256];
+
+    static {
+        int maxKeyLength = 0;
+        for (MessageType type : values()) {
+            int slot = hash(type.key, 0, type.key.length) & (TABLE_SIZE - 1);
+            while (BY_HASH[slot] != null) {
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+            BY_HASH[slot] = type;
+            BY_OPCODE[type.opcode] = type;
+            maxKeyLength = Math.max(maxKeyLength, type.key.length);
+        }
+        MAX_KEY_LENGTH = maxKeyLength;
+    }
+
+    private final byte[] key;
+    private final int opcode;
+    private final boolean hasArguments;
+    private final boolean requiresAuthentication;
+    private final Lane lane;
+
+    MessageType(String key, int opcode, boolean hasArguments, boolean requiresAuthentication, Lane lane) {
+        this.key = key.getBytes(StandardCharsets.US_ASCII);
+        this.opcode = opcode;
+        this.hasArguments = hasArguments;
+        this.requiresAuthentication = requiresAuthentication;
+        this.lane = lane;
+    }
+
+    int getOpcode() {
+        return opcode;
+    }
+
+    boolean hasArguments() {
+        return hasArguments;
+    }
+
+    boolean requiresAuthentication() {
+        return requiresAuthentication;
+    }
+
+    Lane getLane() {
+        return lane;
+    }
+
+    // Type d'un message texte ; null si inconnu
+    static MessageType fromText(byte[] data, int length) {
+        int keyEnd = 0;
+        int limit = Math.min(length, MAX_KEY_LENGTH + 1);
+        while (keyEnd < limit && data[keyEnd] != ':') {
+            keyEnd++;
+        }
+        if (keyEnd > MAX_KEY_LENGTH) {
+            return null;
+        }
+
+        boolean withArguments = keyEnd < length;
+        int slot = hash(data, 0, keyEnd) & (TABLE_SIZE - 1);
+        MessageType candidate;
+        while ((candidate = BY_HASH[slot]) != null) {
+            if (candidate.matches(data, keyEnd)) {
+                // Les messages sans argument sont comparés en entier, comme avant
+                return candidate.hasArguments == withArguments ? candidate : null;
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        return null;
+    }
+
+    static MessageType fromOpcode(int opcode) {
+        return BY_OPCODE[opcode & 0xFF];
+    }
+
+    private boolean matches(byte[] data, int keyLength) {
+        if (keyLength != key.length) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (data[i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] data, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + data[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,192 @@
+package main.java.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Connexion non bloquante gérée par le Selector de NioTransport.
+ *
+ * Une écriture est mise en file puis tentée immédiatement depuis le thread
+ * appelant ; si le tampon d'émission du système est plein, le reste part
+ * lorsque le Selector signale la socket inscriptible. Les trames en attente
+ * sont envoyées ensemble par une écriture groupée (gathering write) : une
+ * rafale de petits messages ne coûte qu'un appel système. L'ordre d'envoi
+ * entre classes de trafic est celui de l'OutboundQueue.
+ */
+class NioConnection implements ClientConnection {
+    private static final int MAX_GATHER = 64;
+    // Octets engagés d'avance dans l'ordre d'envoi : borne l'attente d'une trame CONTROL arrivée après
+    private static final long MAX_IN_FLIGHT_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final OutboundQueue queue = new OutboundQueue();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER]; // protégé par writeLock
+    // Trames retirées de la file, en cours d'écriture (une trame commencée doit finir avant la suivante)
+    private final ArrayDeque<OutboundQueue.Entry> inFlight = new ArrayDeque<>(); // protégé par writeLock
+    private long inFlightBytes = 0; // protégé par writeLock
+    private volatile boolean writing = false;
+    // Intérêts du Selector modifiés par plusieurs threads : lecture suspendue, écriture en attente
+    private final Object interestLock = new Object();
+    private boolean readPaused = false; // protégé par interestLock
+
+    NioConnection(SocketChannel channel, SelectionKey key) {
+        this.channel = channel;
+        this.key = key;
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, TrafficClass trafficClass, Runnable onWritten) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Connexion fermée");
+        }
+        queue.add(buffers, trafficClass, onWritten);
+        flush();
+    }
+
+    @Override
+    public void write(Supplier<ByteBuffer[]> encoder, long estimatedBytes, TrafficClass trafficClass,
+                      Runnable onWritten) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Connexion fermée");
+        }
+        queue.add(encoder, estimatedBytes, trafficClass, onWritten);
+        flush();
+    }
+
+    // Appelé par le Selector quand la socket redevient inscriptible
+    void onWritable() throws IOException {
+        synchronized (interestLock) {
+            key.interestOps(readPaused ? 0 : SelectionKey.OP_READ);
+        }
+        flush();
+    }
+
+    private void flush() throws IOException {
+        // Celui qui détient le verrou revérifie la file après l'avoir libéré : rien ne reste bloqué
+        while ((writing || !queue.isEmpty()) && writeLock.tryLock()) {
+            List<Runnable> completed = new ArrayList<>();
+            boolean drained;
+            try {
+                drained = flushLocked(completed);
+                writing = !inFlight.isEmpty();
+            } finally {
+                writeLock.unlock();
+            }
+            for (Runnable callback : completed) {
+                callback.run();
+            }
+            if (!drained) {
+                enableWriteInterest();
+                return;
+            }
+        }
+    }
+
+    // Retourne false si le système n'accepte plus d'octets pour l'instant
+    private boolean flushLocked(List<Runnable> completed) throws IOException {
+        while (true) {
+            // Engager les trames suivantes dans l'ordre choisi par les priorités de la file
+            OutboundQueue.Entry next;
+            while (inFlightBytes < MAX_IN_FLIGHT_BYTES && (next = queue.poll()) != null) {
+                inFlight.add(next);
+                inFlightBytes += next.bytes;
+            }
+
+            int count = 0;
+            collect:
+            for (OutboundQueue.Entry pending : inFlight) {
+                for (ByteBuffer buffer : pending.buffers) {
+                    if (buffer.hasRemaining()) {
+                        if (count == MAX_GATHER) {
+                            break collect;
+                        }
+                        gather[count++] = buffer;
+                    }
+                }
+            }
+
+            long written = count > 0 ? channel.write(gather, 0, count) : 0;
+            Arrays.fill(gather, 0, count, null);
+
+            OutboundQueue.Entry head;
+            while ((head = inFlight.peek()) != null && head.isDone()) {
+                inFlight.poll();
+                inFlightBytes -= head.bytes;
+                queue.release(head);
+                if (head.onWritten != null) {
+                    completed.add(head.onWritten);
+                }
+            }
+
+            if (inFlight.isEmpty() && queue.isEmpty()) {
+                return true;
+            }
+            if (written == 0) {
+                return false;
+            }
+        }
+    }
+
+    private void enableWriteInterest() {
+        try {
+            synchronized (interestLock) {
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    key.selector().wakeup();
+                }
+            }
+        } catch (CancelledKeyException e) {
+            // Connexion fermée entre-temps
+        }
+    }
+
+    @Override
+    public void setReadPaused(boolean paused) {
+        try {
+            synchronized (interestLock) {
+                readPaused = paused;
+                if (key.isValid()) {
+                    int ops = key.interestOps();
+                    key.interestOps(paused ? ops & ~SelectionKey.OP_READ : ops | SelectionKey.OP_READ);
+                    if (!paused) {
+                        key.selector().wakeup();
+                    }
+                }
+            }
+        } catch (CancelledKeyException e) {
+            // Connexion fermée entre-temps
+        }
+    }
+
+    @Override
+    public long getPendingBytes() {
+        return queue.getPendingBytes();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignorer
+        }
+        queue.clear();
+    }
+}
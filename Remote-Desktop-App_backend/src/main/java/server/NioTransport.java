@@ -0,0 +1,150 @@
+package main.java.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * Transport non bloquant : un seul thread et un Selector pour toutes les
+ * connexions, au lieu d'un thread bloqué en lecture par client.
+ *
+ * Le thread du Selector accepte, lit et termine les écritures en attente.
+ * Les messages décodés sont traités hors de ce thread, sur les voies de
+ * chaque client (voir WebSocketClientHandler) : un traitement lent ne
+ * bloque jamais les autres clients.
+ */
+class NioTransport {
+    private static final int READ_BUFFER_SIZE = 65536;
+
+    private final WebSocketServer server;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = false;
+
+    // Confinés au thread du Selector : un seul tampon direct pour toutes les lectures
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final byte[] readArray = new byte[READ_BUFFER_SIZE];
+
+    NioTransport(WebSocketServer server) {
+        this.server = server;
+    }
+
+    void bind(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+    }
+
+    // Boucle du Selector, exécutée sur le thread appelant jusqu'à stop()
+    void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println("❌ Erreur Selector: " + e.getMessage());
+                continue;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        read(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        ((NioConnection) ((WebSocketClientHandler) key.attachment()).getConnection()).onWritable();
+                    }
+                } catch (IOException | CancelledKeyException e) {
+                    closeKey(key);
+                } catch (RuntimeException e) {
+                    // Une connexion défaillante ne doit jamais arrêter le thread du Selector
+                    System.err.println("❌ Erreur connexion NIO: " + e.getMessage());
+                    closeKey(key);
+                }
+            }
+        }
+    }
+
+    private void closeKey(SelectionKey key) {
+        Object handler = key.attachment();
+        if (handler instanceof WebSocketClientHandler) {
+            ((WebSocketClientHandler) handler).disconnect();
+        } else if (key.channel() != serverChannel) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // Ignorer
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            String clientIP = channel.socket().getInetAddress().getHostAddress();
+
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            NioConnection connection = new NioConnection(channel, key);
+            WebSocketClientHandler handler = new WebSocketClientHandler(connection, server, clientIP);
+            key.attach(handler);
+            server.registerClient(handler);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("❌ Erreur lors de l'acceptation du client: " + e.getMessage());
+            channel.close();
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        WebSocketClientHandler handler = (WebSocketClientHandler) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+
+        readBuffer.clear();
+        int bytesRead = channel.read(readBuffer);
+        if (bytesRead < 0) {
+            handler.disconnect();
+            return;
+        }
+        if (bytesRead > 0) {
+            readBuffer.flip();
+            readBuffer.get(readArray, 0, bytesRead);
+            handler.onBytesReceived(readArray, bytesRead);
+        }
+    }
+
+    void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) serverChannel.close();
+            if (selector != null) selector.close();
+        } catch (IOException e) {
+            // Ignorer
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package main.java.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * File d'émission d'une connexion, commune aux deux transports.
+ *
+ * Les producteurs (diffusions, flux d'écran, réponses) y déposent leurs
+ * trames sans jamais attendre ; un seul écrivain à la fois la vide et envoie
+ * les trames accumulées ensemble. La mémoire est bornée : au-delà de
+ * rc.outbound.maxPendingBytes en attente, le client est jugé bloqué et la
+ * trame est refusée plutôt que de laisser la file grossir sans limite.
+ *
+ * Une voie par classe de trafic : CONTROL est toujours servie en premier,
+ * les autres se partagent le débit par tourniquet à déficit (deficit round
+ * robin) pondéré. Une voie seule garde tout le débit ; en concurrence, les
+ * fichiers sont limités à rc.outbound.bulkShare (20 % par défaut) et le
+ * chat à 10 %. L'ordre est conservé à l'intérieur d'une voie.
+ *
+ * Une trame peut aussi être déposée sous forme différée : ses octets ne sont
+ * produits qu'au moment où l'écrivain la retire (poll). Les trames dont
+ * l'encodage dépend des précédentes (permessage-deflate avec reprise de
+ * contexte) sont ainsi encodées dans l'ordre exact où elles partent.
+ */
+class OutboundQueue {
+    static final long MAX_PENDING_BYTES = Long.getLong("rc.outbound.maxPendingBytes", 32L * 1024 * 1024);
+
+    private static final double BULK_SHARE = clampShare(Double.parseDouble(
+            System.getProperty("rc.outbound.bulkShare", "0.2")));
+    private static final double CHAT_SHARE = 0.1;
+    // Octets attribués par tour à une voie de part 1
+    private static final int QUANTUM_BASE = 256 * 1024;
+
+    private static final TrafficClass[] CLASSES = TrafficClass.values();
+    private static final int[] QUANTUM = new int[CLASSES.length];
+
+    static {
+        QUANTUM[TrafficClass.SCREEN.ordinal()] = quantum(1.0 - BULK_SHARE - CHAT_SHARE);
+        QUANTUM[TrafficClass.CHAT.ordinal()] = quantum(CHAT_SHARE);
+        QUANTUM[TrafficClass.BULK.ordinal()] = quantum(BULK_SHARE);
+    }
+
+    // Attente en file par classe, toutes connexions confondues
+    private static final LongAdder[] DELAY_COUNT = new LongAdder[CLASSES.length];
+    private static final LongAdder[] DELAY_TOTAL_NANOS = new LongAdder[CLASSES.length];
+    private static final AtomicLongArray DELAY_MAX_NANOS = new AtomicLongArray(CLASSES.length);
+
+    static {
+        for (int i = 0; i < CLASSES.length; i++) {
+            DELAY_COUNT[i] = new LongAdder();
+            DELAY_TOTAL_NANOS[i] = new LongAdder();
+        }
+    }
+
+    static final class Entry {
+        ByteBuffer[] buffers; // produits par encoder au retrait pour une trame différée
+        final long bytes; // taille annoncée au dépôt, utilisée pour toute la comptabilité
+        final Runnable onWritten;
+        final TrafficClass trafficClass;
+        final long enqueuedAt;
+        private final Supplier<ByteBuffer[]> encoder;
+
+        private Entry(ByteBuffer[] buffers, Supplier<ByteBuffer[]> encoder, long bytes, TrafficClass trafficClass,
+                      Runnable onWritten) {
+            this.buffers = buffers;
+            this.encoder = encoder;
+            this.bytes = bytes;
+            this.trafficClass = trafficClass;
+            this.onWritten = onWritten;
+            this.enqueuedAt = System.nanoTime();
+        }
+
+        boolean isDone() {
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final List<Queue<Entry>> lanes = new ArrayList<>(CLASSES.length);
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    // État du tourniquet : uniquement touché par l'écrivain
+    private final long[] deficit = new long[CLASSES.length];
+    private int current = TrafficClass.SCREEN.ordinal();
+    private boolean turnStarted = false;
+
+    OutboundQueue() {
+        for (int i = 0; i < CLASSES.length; i++) {
+            lanes.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    // Lève une IOException si la limite est dépassée (une trame seule, même grosse, passe toujours)
+    void add(ByteBuffer[] buffers, TrafficClass trafficClass, Runnable onWritten) throws IOException {
+        long bytes = 0;
+        for (ByteBuffer buffer : buffers) {
+            bytes += buffer.remaining();
+        }
+        reserve(bytes);
+        lanes.get(trafficClass.ordinal()).add(new Entry(buffers, null, bytes, trafficClass, onWritten));
+    }
+
+    // Trame différée : encoder est appelé par l'écrivain au retrait ; bytes est une estimation (taille non compressée)
+    void add(Supplier<ByteBuffer[]> encoder, long bytes, TrafficClass trafficClass, Runnable onWritten)
+            throws IOException {
+        reserve(bytes);
+        lanes.get(trafficClass.ordinal()).add(new Entry(null, encoder, bytes, trafficClass, onWritten));
+    }
+
+    private void reserve(long bytes) throws IOException {
+        long total = pendingBytes.addAndGet(bytes);
+        if (total > MAX_PENDING_BYTES && total != bytes) {
+            pendingBytes.addAndGet(-bytes);
+            throw new IOException("File d'émission pleine (" + (total - bytes) + " octets en attente)");
+        }
+    }
+
+    /**
+     * Prochaine trame à envoyer selon les priorités, ou null si tout est vide.
+     * Réservé à l'écrivain (un seul à la fois). Ses octets restent comptés
+     * jusqu'à release().
+     */
+    Entry poll() {
+        Entry entry = lanes.get(TrafficClass.CONTROL.ordinal()).poll();
+        if (entry == null && hasWeightedEntries()) {
+            entry = pollWeighted();
+        }
+        if (entry != null) {
+            if (entry.encoder != null) {
+                entry.buffers = entry.encoder.get();
+            }
+            recordDelay(entry);
+        }
+        return entry;
+    }
+
+    // Les producteurs ne font qu'ajouter : une voie non vide le reste jusqu'au poll de l'écrivain
+    private Entry pollWeighted() {
+        while (true) {
+            Queue<Entry> lane = lanes.get(current);
+            Entry head = lane.peek();
+            if (head == null) {
+                // Une voie inactive ne capitalise pas de crédit
+                deficit[current] = 0;
+                nextLane();
+                continue;
+            }
+            if (!turnStarted) {
+                deficit[current] += QUANTUM[current];
+                turnStarted = true;
+            }
+            if (head.bytes <= deficit[current]) {
+                deficit[current] -= head.bytes;
+                return lane.poll();
+            }
+            nextLane();
+        }
+    }
+
+    private void nextLane() {
+        current = current == CLASSES.length - 1 ? TrafficClass.SCREEN.ordinal() : current + 1;
+        turnStarted = false;
+    }
+
+    private boolean hasWeightedEntries() {
+        for (int i = TrafficClass.SCREEN.ordinal(); i < lanes.size(); i++) {
+            if (!lanes.get(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Octets de l'entrée remis au système
+    void release(Entry entry) {
+        pendingBytes.addAndGet(-entry.bytes);
+    }
+
+    boolean isEmpty() {
+        for (Queue<Entry> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    void clear() {
+        for (Queue<Entry> lane : lanes) {
+            lane.clear();
+        }
+        pendingBytes.set(0);
+    }
+
+    // ── Mesures ──
+
+    private static void recordDelay(Entry entry) {
+        int index = entry.trafficClass.ordinal();
+        long delay = System.nanoTime() - entry.enqueuedAt;
+        DELAY_COUNT[index].increment();
+        DELAY_TOTAL_NANOS[index].add(delay);
+        DELAY_MAX_NANOS.accumulateAndGet(index, delay, Math::max);
+    }
+
+    // Attente moyenne et maximale avant envoi, par classe (commande "status")
+    static String describeQueueingDelays() {
+        StringBuilder description = new StringBuilder();
+        for (TrafficClass trafficClass : CLASSES) {
+            int index = trafficClass.ordinal();
+            long count = DELAY_COUNT[index].sum();
+            if (description.length() > 0) {
+                description.append(" | ");
+            }
+            description.append(trafficClass.getLabel()).append(": ").append(count);
+            if (count > 0) {
+                description.append(String.format(" trames, moy %.2f ms, max %.1f ms",
+                        DELAY_TOTAL_NANOS[index].sum() / (count * 1e6),
+                        DELAY_MAX_NANOS.get(index) / 1e6));
+            }
+        }
+        return description.toString();
+    }
+
+    private static double clampShare(double share) {
+        return Math.max(0.05, Math.min(0.8, share));
+    }
+
+    private static int quantum(double share) {
+        return Math.max(1024, (int) (QUANTUM_BASE * share));
+    }
+}
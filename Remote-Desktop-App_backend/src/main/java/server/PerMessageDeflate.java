@@ -0,0 +1,232 @@
+package main.java.server;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Extension permessage-deflate (RFC 7692) d'une connexion.
+ *
+ * Deux modes, choisis par configuration :
+ *  - avec reprise de contexte (défaut) : un Deflater par connexion garde la
+ *    fenêtre de 32 Ko d'un message à l'autre ; meilleur taux sur les JSON
+ *    répétitifs (USER_LIST, CHAT_MESSAGE), mais compression par destinataire ;
+ *  - sans reprise (rc.deflate.contextTakeover=false) : chaque message est
+ *    compressé une seule fois, le résultat est partagé par tous les
+ *    destinataires d'une diffusion et les Deflater viennent d'un pool commun.
+ *
+ * java.util.zip n'expose ni memLevel ni la taille de fenêtre : la mémoire par
+ * connexion se règle par ce choix de mode (aucun Deflater par connexion sans
+ * reprise). Les offres exigeant server_max_window_bits < 15 sont refusées.
+ *
+ * Les trames marquées non compressibles (JPEG, PNG) partent telles quelles.
+ */
+class PerMessageDeflate {
+    static final String EXTENSION = "permessage-deflate";
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("rc.deflate", "true"));
+    private static final boolean CONTEXT_TAKEOVER =
+            !"false".equalsIgnoreCase(System.getProperty("rc.deflate.contextTakeover", "true"));
+    private static final int LEVEL = Integer.getInteger("rc.deflate.level", 6);
+    private static final int MIN_SIZE = Integer.getInteger("rc.deflate.minSize", 64);
+
+    private static final byte[] TAIL = { 0x00, 0x00, (byte) 0xFF, (byte) 0xFF };
+    private static final Queue<Compressor> SHARED_COMPRESSORS = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Deflater et son tampon de sortie réutilisable.
+     */
+    private static final class Compressor {
+        final Deflater deflater = new Deflater(LEVEL, true);
+        byte[] buffer = new byte[1024];
+
+        byte[] compress(PreparedFrame frame) {
+            byte[] header = frame.header();
+            int offset = frame.headerOffset();
+            int length = 0;
+
+            if (header.length > offset) {
+                deflater.setInput(header, offset, header.length - offset);
+                length = run(length, Deflater.NO_FLUSH);
+            }
+            deflater.setInput(frame.payload());
+            length = run(length, Deflater.SYNC_FLUSH);
+
+            // RFC 7692 §7.2.1 : le marqueur 00 00 FF FF final est retiré
+            if (length >= 4 && buffer[length - 4] == 0 && buffer[length - 3] == 0
+                    && buffer[length - 2] == (byte) 0xFF && buffer[length - 1] == (byte) 0xFF) {
+                length -= 4;
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+
+        private int run(int length, int flush) {
+            while (true) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length, flush);
+                if (flush == Deflater.NO_FLUSH ? deflater.needsInput() : length < buffer.length) {
+                    return length;
+                }
+            }
+        }
+    }
+
+    private final boolean serverContextTakeover;
+    private final Compressor compressor; // null sans reprise de contexte
+    private final Inflater inflater = new Inflater(true);
+    private boolean ended = false; // protégé par le moniteur de l'instance (voir WebSocketClientHandler)
+
+    private static final int INFLATE_INITIAL_CAPACITY = 4096;
+    private static final int INFLATE_SHRINK_THRESHOLD = 1 << 20;
+
+    private byte[] inflateBuffer = new byte[INFLATE_INITIAL_CAPACITY];
+    private int inflatedLength;
+
+    private PerMessageDeflate(boolean serverContextTakeover) {
+        this.serverContextTakeover = serverContextTakeover;
+        this.compressor = serverContextTakeover ? new Compressor() : null;
+    }
+
+    /**
+     * Choisit la première offre acceptable de l'en-tête Sec-WebSocket-Extensions.
+     * @return null si l'extension n'est pas proposée, pas acceptable ou désactivée
+     */
+    static PerMessageDeflate negotiate(String extensionsHeader) {
+        if (!ENABLED || extensionsHeader == null) {
+            return null;
+        }
+
+        for (String offer : extensionsHeader.split(",")) {
+            String[] parameters = offer.split(";");
+            if (!parameters[0].trim().equalsIgnoreCase(EXTENSION)) {
+                continue;
+            }
+
+            boolean acceptable = true;
+            boolean takeover = CONTEXT_TAKEOVER;
+            for (int i = 1; i < parameters.length && acceptable; i++) {
+                String[] parameter = parameters[i].trim().split("=", 2);
+                String name = parameter[0].trim().toLowerCase();
+                String value = parameter.length > 1 ? parameter[1].trim().replace("\"", "") : null;
+                switch (name) {
+                    case "server_no_context_takeover":
+                        takeover = false;
+                        break;
+                    case "server_max_window_bits":
+                        acceptable = value != null && value.equals("15");
+                        break;
+                    case "client_no_context_takeover":
+                    case "client_max_window_bits":
+                        // Notre Inflater accepte toute fenêtre, avec ou sans reprise de contexte
+                        break;
+                    default:
+                        acceptable = false;
+                        break;
+                }
+            }
+            if (acceptable) {
+                return new PerMessageDeflate(takeover);
+            }
+        }
+        return null;
+    }
+
+    // Valeur de Sec-WebSocket-Extensions dans la réponse du handshake
+    String responseHeader() {
+        return serverContextTakeover ? EXTENSION : EXTENSION + "; server_no_context_takeover";
+    }
+
+    boolean shouldCompress(PreparedFrame frame) {
+        return frame.isCompressible() && frame.length() >= MIN_SIZE;
+    }
+
+    // Avec reprise de contexte, l'appelant sérialise compression et écriture (ordre des messages)
+    boolean usesContextTakeover() {
+        return serverContextTakeover;
+    }
+
+    PreparedFrame compress(PreparedFrame frame) {
+        if (serverContextTakeover) {
+            // Connexion fermée entre le dépôt et l'envoi : la trame ne partira pas
+            return ended ? frame : frame.deflated(compressor.compress(frame));
+        }
+
+        // Sans contexte : résultat identique pour tous les destinataires, calculé une seule fois
+        PreparedFrame shared = frame.getSharedDeflated();
+        if (shared == null) {
+            Compressor pooled = SHARED_COMPRESSORS.poll();
+            if (pooled == null) {
+                pooled = new Compressor();
+            }
+            try {
+                shared = frame.deflated(pooled.compress(frame));
+            } finally {
+                pooled.deflater.reset();
+                SHARED_COMPRESSORS.offer(pooled);
+            }
+            frame.setSharedDeflated(shared);
+        }
+        return shared;
+    }
+
+    /**
+     * Décompresse un message reçu avec RSV1. Le résultat est dans
+     * getInflated() / getInflatedLength(), tampon réutilisé.
+     */
+    void inflate(byte[] data, int length, int maxSize) throws DataFormatException {
+        inflatedLength = 0;
+        inflater.setInput(data, 0, length);
+        runInflate(maxSize);
+        inflater.setInput(TAIL);
+        runInflate(maxSize);
+    }
+
+    private void runInflate(int maxSize) throws DataFormatException {
+        while (!inflater.needsInput()) {
+            if (inflatedLength == inflateBuffer.length) {
+                if (inflateBuffer.length >= maxSize) {
+                    throw new DataFormatException("Message décompressé trop volumineux");
+                }
+                inflateBuffer = Arrays.copyOf(inflateBuffer, Math.min(maxSize, inflateBuffer.length * 2));
+            }
+            int count = inflater.inflate(inflateBuffer, inflatedLength, inflateBuffer.length - inflatedLength);
+            inflatedLength += count;
+            if (count == 0 && (inflater.needsDictionary() || inflater.finished())) {
+                break;
+            }
+        }
+    }
+
+    byte[] getInflated() {
+        return inflateBuffer;
+    }
+
+    int getInflatedLength() {
+        return inflatedLength;
+    }
+
+    /**
+     * À appeler une fois le message décompressé consommé : ne pas garder
+     * indéfiniment le tampon d'un gros message ponctuel (même règle que le
+     * tampon de réassemblage de WebSocketFrameDecoder).
+     */
+    void releaseInflated() {
+        inflatedLength = 0;
+        if (inflateBuffer.length > INFLATE_SHRINK_THRESHOLD) {
+            inflateBuffer = new byte[INFLATE_INITIAL_CAPACITY];
+        }
+    }
+
+    void end() {
+        ended = true;
+        if (compressor != null) {
+            compressor.deflater.end();
+        }
+        inflater.end();
+    }
+}
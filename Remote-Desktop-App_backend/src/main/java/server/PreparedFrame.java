@@ -0,0 +1,164 @@
+package main.java.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Trame WebSocket (en-tête + données) encodée une seule fois.
+ *
+ * Les mêmes tableaux immuables sont écrits tels quels sur chaque socket lors
+ * d'une diffusion : l'allocation par message ne dépend plus du nombre de
+ * clients. L'en-tête et les données restent séparés et partent en une seule
+ * écriture groupée (gathering write), sans recopie des données.
+ * Chaque trame porte sa classe de trafic, qui fixe sa priorité d'envoi.
+ */
+public final class PreparedFrame {
+    private static final byte TEXT = (byte) 0x81;
+    private static final byte BINARY = (byte) 0x82;
+    private static final byte CLOSE = (byte) 0x88;
+    private static final byte PING = (byte) 0x89;
+    private static final byte PONG = (byte) 0x8A;
+    private static final byte RSV1 = 0x40;
+
+    private final byte[] header;
+    private final byte[] payload;
+    private final int offset; // longueur de l'en-tête WebSocket, avant le préfixe éventuel
+    private final boolean compressible;
+    private final TrafficClass trafficClass;
+
+    // Version compressée sans contexte, partagée par tous les destinataires (voir PerMessageDeflate)
+    private volatile PreparedFrame sharedDeflated;
+
+    private PreparedFrame(byte[] header, byte[] payload, int offset, boolean compressible,
+                          TrafficClass trafficClass) {
+        this.header = header;
+        this.payload = payload;
+        this.offset = offset;
+        this.compressible = compressible;
+        this.trafficClass = trafficClass;
+    }
+
+    public static PreparedFrame text(String message) {
+        return text(message, TrafficClass.CONTROL);
+    }
+
+    public static PreparedFrame text(String message, TrafficClass trafficClass) {
+        return build(TEXT, null, message.getBytes(StandardCharsets.UTF_8), true, trafficClass);
+    }
+
+    // Préfixe ASCII + données déjà encodées (ex : "SCREEN_DATA:id:" + Base64)
+    public static PreparedFrame text(byte[] prefix, byte[] payload, TrafficClass trafficClass) {
+        return build(TEXT, prefix, payload, true, trafficClass);
+    }
+
+    // Données binaires déjà compressées (JPEG, PNG) : jamais recompressées par permessage-deflate.
+    // Le protocole binaire ne transporte que l'écran.
+    public static PreparedFrame binary(byte[] payload) {
+        return build(BINARY, null, payload, false, TrafficClass.SCREEN);
+    }
+
+    public static PreparedFrame binary(byte[] header, byte[] payload) {
+        return build(BINARY, header, payload, false, TrafficClass.SCREEN);
+    }
+
+    public static PreparedFrame binary(byte[] header, byte[] payload, boolean compressible) {
+        return build(BINARY, header, payload, compressible, TrafficClass.SCREEN);
+    }
+
+    // Vérification de présence ; le navigateur répond par un PONG sans intervention de l'application
+    public static PreparedFrame ping() {
+        return build(PING, null, new byte[0], false, TrafficClass.CONTROL);
+    }
+
+    // Réponse à un PING : même contenu (125 octets au plus)
+    public static PreparedFrame pong(byte[] payload) {
+        return build(PONG, null, payload, false, TrafficClass.CONTROL);
+    }
+
+    public static PreparedFrame close(int code) {
+        return build(CLOSE, null, new byte[] { (byte) (code >> 8), (byte) code }, false, TrafficClass.CONTROL);
+    }
+
+    // Même message, contenu compressé par permessage-deflate (bit RSV1)
+    PreparedFrame deflated(byte[] data) {
+        return build((byte) (header[0] | RSV1), null, data, false, trafficClass);
+    }
+
+    private static PreparedFrame build(byte firstByte, byte[] prefix, byte[] payload, boolean compressible,
+                                       TrafficClass trafficClass) {
+        int prefixLength = prefix != null ? prefix.length : 0;
+        int length = prefixLength + payload.length;
+        int offset;
+        byte[] header;
+
+        if (length < 126) {
+            offset = 2;
+            header = new byte[offset + prefixLength];
+            header[1] = (byte) length;
+        } else if (length < 65536) {
+            offset = 4;
+            header = new byte[offset + prefixLength];
+            header[1] = 126;
+            header[2] = (byte) (length >> 8);
+            header[3] = (byte) (length & 0xFF);
+        } else {
+            offset = 10;
+            header = new byte[offset + prefixLength];
+            header[1] = 127;
+            long len = length;
+            for (int i = 0; i < 8; i++) {
+                header[9 - i] = (byte) (len & 0xFF);
+                len >>= 8;
+            }
+        }
+        header[0] = firstByte;
+
+        // Le préfixe éventuel est court : il voyage avec l'en-tête
+        if (prefixLength > 0) {
+            System.arraycopy(prefix, 0, header, offset, prefixLength);
+        }
+
+        return new PreparedFrame(header, payload, offset, compressible, trafficClass);
+    }
+
+    // Nouvelles vues à chaque appel : chaque destinataire a ses propres positions d'écriture
+    ByteBuffer[] buffers() {
+        return new ByteBuffer[] {
+                ByteBuffer.wrap(header),
+                ByteBuffer.wrap(payload)
+        };
+    }
+
+    public int length() {
+        return header.length + payload.length;
+    }
+
+    TrafficClass getTrafficClass() {
+        return trafficClass;
+    }
+
+    boolean isCompressible() {
+        return compressible;
+    }
+
+    // Contenu du message : header[headerOffset()..] (préfixe éventuel) puis payload()
+    byte[] header() {
+        return header;
+    }
+
+    int headerOffset() {
+        return offset;
+    }
+
+    byte[] payload() {
+        return payload;
+    }
+
+    PreparedFrame getSharedDeflated() {
+        return sharedDeflated;
+    }
+
+    void setSharedDeflated(PreparedFrame frame) {
+        sharedDeflated = frame;
+    }
+}
@@ -0,0 +1,70 @@
+package main.java.server;
+
+import java.nio.ByteBuffer;
+import main.java.capture.QoiFrameCodec;
+import main.java.capture.TileUpdate;
+
+/**
+ * Format binaire des trames d'écran envoyées en opcode WebSocket 0x2.
+ *
+ * En-tête fixe de 16 octets (big-endian) suivi des données encodées :
+ *   [0]     type de message (0x01 = image complète, 0x02 = tuiles modifiées)
+ *   [1]     codec (0x01 = JPEG, 0x02 = PNG, 0x03 = QOI ; voir FrameCodec)
+ *   [2..3]  réservé (flags)
+ *   [4..11] identifiant de trame
+ *   [12..13] largeur
+ *   [14..15] hauteur
+ *
+ * Pour les tuiles, les données sont : nombre de tuiles (u16) puis, pour
+ * chaque tuile, x, y, largeur, hauteur (u16), taille (u32) et l'image JPEG.
+ *
+ * Le mode binaire est négocié au handshake via Sec-WebSocket-Protocol ;
+ * les clients qui ne le proposent pas restent en mode texte Base64.
+ */
+public final class ScreenFrameProtocol {
+    public static final String SUBPROTOCOL = "rc-binary.v1";
+    public static final int HEADER_SIZE = 16;
+
+    public static final byte TYPE_FULL_FRAME = 0x01;
+    public static final byte TYPE_TILE_UPDATE = 0x02;
+
+    public static final byte CODEC_JPEG = 0x01;
+
+    private ScreenFrameProtocol() {
+    }
+
+    public static byte[] buildHeader(byte type, byte codec, long frameId, int width, int height) {
+        byte[] header = new byte[HEADER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        buffer.put(type);
+        buffer.put(codec);
+        buffer.putShort((short) 0);
+        buffer.putLong(frameId);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        return header;
+    }
+
+    // Trame WebSocket complète (en-tête WS + en-tête écran + image), sans recopie de l'image.
+    // Seul QOI gagne à passer par permessage-deflate : JPEG et PNG sont déjà compressés.
+    public static PreparedFrame prepareFrame(byte type, byte codec, long frameId, int width, int height, byte[] data) {
+        return PreparedFrame.binary(buildHeader(type, codec, frameId, width, height), data,
+                codec == QoiFrameCodec.ID);
+    }
+
+    public static PreparedFrame prepareTileFrame(long frameId, int width, int height, TileUpdate update) {
+        int tileHeaderSize = 12;
+        byte[] data = new byte[2 + update.getTiles().size() * tileHeaderSize + update.getEncodedSize()];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.putShort((short) update.getTiles().size());
+        for (TileUpdate.Tile tile : update.getTiles()) {
+            buffer.putShort((short) tile.x);
+            buffer.putShort((short) tile.y);
+            buffer.putShort((short) tile.width);
+            buffer.putShort((short) tile.height);
+            buffer.putInt(tile.data.length);
+            buffer.put(tile.data);
+        }
+        return prepareFrame(TYPE_TILE_UPDATE, CODEC_JPEG, frameId, width, height, data);
+    }
+}
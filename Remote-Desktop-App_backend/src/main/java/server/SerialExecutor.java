@@ -0,0 +1,115 @@
+package main.java.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Exécute les tâches d'une connexion une par une, dans l'ordre de soumission,
+ * sur un pool partagé : aucun thread n'est réservé à une connexion inactive.
+ *
+ * Les octets des messages en attente sont comptés : au-delà de la limite la
+ * voie se déclare saturée, et ne redevient libre qu'une fois redescendue à
+ * la moitié. Aucune tâche n'est refusée ; c'est au lecteur de la connexion
+ * de suspendre la lecture tant que la voie est saturée (voir onSaturation).
+ */
+final class SerialExecutor implements Executor {
+    private final Executor backing;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final long maxPendingBytes;
+    // Appelé après chaque changement d'état de saturation, hors verrou
+    private final Runnable onSaturation;
+    private long pendingBytes = 0; // protégé par this
+    private volatile boolean saturated = false; // modifié sous this
+
+    SerialExecutor(Executor backing) {
+        this(backing, Long.MAX_VALUE, null);
+    }
+
+    SerialExecutor(Executor backing, long maxPendingBytes, Runnable onSaturation) {
+        this.backing = backing;
+        this.maxPendingBytes = maxPendingBytes;
+        this.onSaturation = onSaturation;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    // Tâche portant un message de bytes octets, décomptés une fois la tâche terminée
+    void execute(Runnable task, long bytes) {
+        boolean changed;
+        synchronized (this) {
+            pendingBytes += bytes;
+            changed = !saturated && pendingBytes > maxPendingBytes;
+            if (changed) {
+                saturated = true;
+            }
+        }
+        tasks.add(() -> {
+            try {
+                task.run();
+            } finally {
+                release(bytes);
+            }
+        });
+        if (changed && onSaturation != null) {
+            onSaturation.run();
+        }
+        schedule();
+    }
+
+    private void release(long bytes) {
+        boolean changed;
+        synchronized (this) {
+            pendingBytes -= bytes;
+            changed = saturated && pendingBytes <= maxPendingBytes / 2;
+            if (changed) {
+                saturated = false;
+            }
+        }
+        if (changed && onSaturation != null) {
+            onSaturation.run();
+        }
+    }
+
+    boolean isSaturated() {
+        return saturated;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                backing.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("❌ Erreur tâche connexion: " + e.getMessage());
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+
+        // Une tâche a pu arriver entre la dernière lecture et la libération
+        if (!tasks.isEmpty()) {
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package main.java.server;
+
+/**
+ * Classe de trafic d'une trame sortante, de la plus prioritaire à la moins prioritaire.
+ *
+ * CONTROL passe toujours en premier (petits messages : réponses de contrôle,
+ * authentification, PONG). Les autres classes se partagent la bande passante
+ * par tourniquet pondéré (voir OutboundQueue) : un gros téléchargement ne
+ * peut plus figer l'écran distant.
+ */
+public enum TrafficClass {
+    CONTROL("contrôle"),
+    SCREEN("écran"),
+    CHAT("chat/listes"),
+    BULK("fichiers");
+
+    private final String label;
+
+    TrafficClass(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,40 @@
+package main.java.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Accès aux threads virtuels (Java 21+) par réflexion : le serveur reste
+ * compilable et exécutable en Java 17, où l'on retombe sur un pool classique.
+ */
+final class VirtualThreads {
+    private static final Method NEW_PER_TASK_EXECUTOR = lookup();
+
+    private VirtualThreads() {
+    }
+
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    static boolean isAvailable() {
+        return NEW_PER_TASK_EXECUTOR != null;
+    }
+
+    // Un thread virtuel par tâche, ou un pool de threads plateforme si la JVM n'en dispose pas
+    static ExecutorService newPerTaskExecutor() {
+        if (NEW_PER_TASK_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("⚠️ Threads virtuels indisponibles: " + e.getMessage());
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+}
@@ -1,64 +1,272 @@
 package main.java.server;
 
+import java.awt.Rectangle;
 import java.io.*;
-import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import main.java.control.ControlExecutor;
-
-public class WebSocketClientHandler implements Runnable {
-    private Socket socket;
-    private InputStream input;
-    private OutputStream output;
+import main.java.capture.CaptureProfile;
+import main.java.capture.FrameCodecs;
+import main.java.capture.QualityLevel;
+import main.java.capture.StreamTier;
+import main.java.capture.TileUpdate;
+import main.java.control.CustomInputEvent;
+import main.java.control.InputEventCodec;
+import main.java.models.Session;
+import main.java.utils.TimerWheel;
+
+public class WebSocketClientHandler implements WebSocketFrameDecoder.Listener {
+    private static final int MAX_HANDSHAKE_SIZE = 8192;
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+    // Client silencieux : PING WebSocket après l'intervalle (le navigateur répond seul), déconnexion après le délai
+    private static final long HEARTBEAT_INTERVAL = Long.getLong("rc.heartbeat.intervalMs", 30_000L);
+    private static final long HEARTBEAT_TIMEOUT = Long.getLong("rc.heartbeat.timeoutMs", 90_000L);
+    // Octets de messages en attente par voie au-delà desquels la lecture de la connexion est suspendue
+    private static final long LANE_MAX_PENDING_BYTES = Long.getLong("rc.lane.maxPendingBytes", 4L * 1024 * 1024);
+    // Salle demandée dans l'URL : GET /room/<id> ou GET /?room=<id>
+    private static final Pattern ROOM_PATTERN = Pattern.compile(
+            "^GET /(?:room/([A-Za-z0-9_-]{1,32})|\\S*[?&]room=([A-Za-z0-9_-]{1,32}))");
+
+    private final ClientConnection connection;
+    // Voies de traitement des messages reçus (voir MessageType.Lane), chacune ordonnée
+    private final SerialExecutor inputLane;
+    private final SerialExecutor fileLane;
+    private final SerialExecutor chatLane;
+    // Recalcul de la suspension de lecture : le dernier appel voit toujours l'état courant des voies
+    private final Object readPauseLock = new Object();
     private WebSocketServer server;
-    private boolean isWebSocketConnected = false;
+    private volatile boolean isWebSocketConnected = false;
+    private StringBuilder handshakeRequest = new StringBuilder();
+    private final WebSocketFrameDecoder decoder = new WebSocketFrameDecoder(MAX_MESSAGE_SIZE);
+    private volatile PerMessageDeflate deflate;
     private String clientId;
     private String clientIP;
-    private ControlExecutor controlExecutor;
-    private boolean isAuthenticated = false;
+    // Salle rejointe à la fin de la négociation (null avant)
+    private volatile Session session;
+    private String requestedRoom = Session.DEFAULT_ID;
+    private volatile boolean isAuthenticated = false;
     private boolean connectionApproved = false;
-
-    public WebSocketClientHandler(Socket socket, WebSocketServer server, String clientIP) throws IOException {
-        this.socket = socket;
+    private volatile boolean binaryFrames = false;
+    private volatile boolean tileUpdates = false;
+    private volatile boolean needsKeyframe = true;
+    private final ClientFrameSender frameSender;
+    // Réutilisés d'un événement d'entrée à l'autre : format binaire sur le thread de lecture,
+    // JSON sur la voie d'entrée
+    private final CustomInputEvent readInputEvent = new CustomInputEvent();
+    private final CustomInputEvent inputEvent = new CustomInputEvent();
+    // Événements binaires repassés par la voie d'entrée (file d'injection pleine) et pas encore soumis
+    private final AtomicInteger deferredInputEvents = new AtomicInteger();
+    private volatile CaptureProfile captureProfile = CaptureProfile.DEFAULT;
+    // Palier de diffusion choisi (SET_TIER) ; null : profil libre et qualité adaptative
+    private volatile StreamTier streamTier;
+    private volatile String frameCodec = FrameCodecs.DEFAULT;
+    // Codecs annoncés décodables par le client dans CAPABILITIES (voie d'entrée uniquement)
+    private Set<String> decodableCodecs = Collections.emptySet();
+    // Dimensions de la dernière image remise au client (largeur << 32 | hauteur), 0 avant la première :
+    // repère des coordonnées de ses événements souris
+    private volatile long frameSize = 0;
+    // Dernière lecture, toute trame comprise (PONG inclus) ; l'échéance de présence la relit
+    private volatile long lastReceivedTime = System.currentTimeMillis();
+    private volatile TimerWheel.Timeout heartbeat;
+
+    WebSocketClientHandler(ClientConnection connection, WebSocketServer server, String clientIP) {
+        this.connection = connection;
         this.server = server;
         this.clientIP = clientIP;
-        this.input = socket.getInputStream();
-        this.output = socket.getOutputStream();
+        this.inputLane = new SerialExecutor(server.getClientExecutor(), LANE_MAX_PENDING_BYTES, this::updateReadPaused);
+        this.fileLane = new SerialExecutor(server.getFileExecutor(), LANE_MAX_PENDING_BYTES, this::updateReadPaused);
+        this.chatLane = new SerialExecutor(server.getClientExecutor(), LANE_MAX_PENDING_BYTES, this::updateReadPaused);
         this.clientId = UUID.randomUUID().toString().substring(0, 8);
-        this.controlExecutor = new ControlExecutor();
+        this.frameSender = new ClientFrameSender(this, server.getFrameSendExecutor(), server.getFrameScheduler());
     }
 
-    @Override
-    public void run() {
+    /**
+     * Octets reçus par le transport, sur son thread de lecture. Le tableau est
+     * réutilisé par l'appelant : rien n'en est conservé après le retour.
+     */
+    void onBytesReceived(byte[] data, int length) {
+        lastReceivedTime = System.currentTimeMillis();
         try {
-            performWebSocketHandshake();
+            if (!isWebSocketConnected) {
+                receiveHandshake(data, length);
+                return;
+            }
+            decoder.feed(data, 0, length, this);
+        } catch (Exception e) {
+            System.err.println("Erreur dans WebSocketClientHandler: " + e.getMessage());
+            disconnect();
+        }
+    }
 
-            if (isWebSocketConnected) {
+    // La requête HTTP d'ouverture peut arriver en plusieurs lectures
+    private void receiveHandshake(byte[] data, int length) throws Exception {
+        handshakeRequest.append(new String(data, 0, length, StandardCharsets.ISO_8859_1));
+        int end = handshakeRequest.indexOf("\r\n\r\n");
+        if (end < 0) {
+            if (handshakeRequest.length() > MAX_HANDSHAKE_SIZE) {
+                disconnect();
+            }
+            return;
+        }
+
+        String request = handshakeRequest.substring(0, end + 2);
+        // Octets déjà reçus après la requête : début des premières trames
+        byte[] remaining = handshakeRequest.substring(end + 4).getBytes(StandardCharsets.ISO_8859_1);
+        handshakeRequest = null;
+        performWebSocketHandshake(request);
+
+        if (isWebSocketConnected) {
+            session = server.joinSession(requestedRoom, this);
+            if (session == null) {
+                sendMessage("CONNECTION_DENIED:Nombre maximal de salles atteint");
+                disconnect();
+                return;
+            }
+            inputLane.execute(() -> {
                 sendMessage("CLIENT_ID:" + clientId);
                 String requestId = server.requestConnection(clientIP, this);
                 sendMessage("CONNECTION_REQUEST:" + requestId);
-                listenForMessages();
+            });
+            if (remaining.length > 0) {
+                decoder.feed(remaining, 0, remaining.length, this);
             }
-        } catch (Exception e) {
-            System.err.println("Erreur dans WebSocketClientHandler: " + e.getMessage());
-        } finally {
+        } else {
             disconnect();
         }
     }
 
-    private void performWebSocketHandshake() throws Exception {
-        Scanner scanner = new Scanner(input, "UTF-8");
-        String request = "";
-        String line;
+    // ── Rappels du décodeur, sur le thread de lecture ──
+
+    @Override
+    public void onMessage(int opcode, byte[] payload, int length) {
+        if (opcode == WebSocketFrameDecoder.OPCODE_BINARY && length > 0
+                && MessageType.fromOpcode(payload[0]) == MessageType.INPUT_EVENT) {
+            onBinaryInputEvent(payload, length);
+            return;
+        }
+        // Le lecteur ne fait que classer ; la copie appartient au message (traitement asynchrone)
+        InboundMessage message = InboundMessage.parse(opcode == WebSocketFrameDecoder.OPCODE_BINARY,
+                Arrays.copyOf(payload, length), length);
+        laneFor(message.getType()).execute(() -> handleMessage(message), length);
+    }
+
+    /**
+     * Une voie saturée (rafale de FILE_CHUNK plus rapide que le disque, par
+     * exemple) suspend la lecture de toute la connexion : le client est freiné
+     * par TCP au lieu de remplir le tas. La lecture reprend quand toutes les
+     * voies sont redescendues.
+     */
+    private void updateReadPaused() {
+        synchronized (readPauseLock) {
+            connection.setReadPaused(inputLane.isSaturated() || fileLane.isSaturated() || chatLane.isSaturated());
+        }
+    }
+
+    /**
+     * Chemin chaud des entrées : INPUT_EVENT binaire décodé sur place depuis le
+     * tampon du décodeur, sans copie, sans InboundMessage ni tâche de voie.
+     * Le thread de lecture n'attend jamais : si la file d'injection est pleine,
+     * l'événement est recopié et soumis par la voie d'entrée, et les suivants
+     * l'y rejoignent tant qu'elle en contient, pour garder l'ordre.
+     */
+    private void onBinaryInputEvent(byte[] payload, int length) {
+        if (!isAuthenticated) {
+            sendMessage("NOT_AUTHENTICATED");
+            return;
+        }
+        if (!InputEventCodec.decode(payload, 1, length - 1, readInputEvent)) {
+            System.out.println("⚠️ Événement d'entrée invalide de " + clientId);
+            return;
+        }
+        if (!acceptInputEvent(readInputEvent)) {
+            return;
+        }
+        if (deferredInputEvents.get() == 0 && server.getControlExecutor().offer(readInputEvent)) {
+            return;
+        }
+
+        CustomInputEvent deferred = new CustomInputEvent();
+        deferred.copyFrom(readInputEvent);
+        deferredInputEvents.incrementAndGet();
+        inputLane.execute(() -> {
+            try {
+                server.getControlExecutor().submit(deferred);
+            } finally {
+                deferredInputEvents.decrementAndGet();
+            }
+        });
+    }
+
+    // Un envoi de fichier ou une fin de session ne retarde jamais les entrées du même client
+    private SerialExecutor laneFor(MessageType type) {
+        if (type == null) {
+            return chatLane;
+        }
+        switch (type.getLane()) {
+            case INPUT:
+                return inputLane;
+            case FILE:
+                return fileLane;
+            default:
+                return chatLane;
+        }
+    }
+
+    // ── Présence ──
+
+    void startHeartbeat() {
+        scheduleHeartbeat(HEARTBEAT_INTERVAL);
+    }
+
+    private void scheduleHeartbeat(long delay) {
+        heartbeat = server.getTimers().schedule(this::checkHeartbeat, delay);
+    }
 
-        while (scanner.hasNextLine()) {
-            line = scanner.nextLine();
-            request += line + "\r\n";
-            if (line.isEmpty()) break;
+    // Sur le thread de la roue temporelle : chaque lecture ne fait qu'écrire l'horodatage
+    private void checkHeartbeat() {
+        if (!connection.isOpen()) {
+            disconnectLater();
+            return;
         }
+        long silence = System.currentTimeMillis() - lastReceivedTime;
+        if (silence >= HEARTBEAT_TIMEOUT) {
+            System.out.println("💔 Client muet depuis " + (silence / 1000) + "s, déconnexion: " + clientId);
+            disconnectLater();
+            return;
+        }
+        if (silence >= HEARTBEAT_INTERVAL) {
+            if (isWebSocketConnected) {
+                sendPrepared(PreparedFrame.ping(), null, true);
+            }
+            scheduleHeartbeat(Math.min(HEARTBEAT_INTERVAL, HEARTBEAT_TIMEOUT - silence));
+        } else {
+            scheduleHeartbeat(HEARTBEAT_INTERVAL - silence);
+        }
+    }
 
+    @Override
+    public void onPing(byte[] payload, int length) {
+        sendPrepared(PreparedFrame.pong(Arrays.copyOf(payload, length)));
+    }
+
+    @Override
+    public void onClose(int code) {
+        sendPrepared(PreparedFrame.close(code));
+        disconnect();
+    }
+
+    @Override
+    public void onProtocolError(int code, String reason) {
+        System.err.println("❌ Trame WebSocket invalide de " + clientIP + ": " + reason);
+        sendPrepared(PreparedFrame.close(code));
+        disconnect();
+    }
+
+    private void performWebSocketHandshake(String request) throws Exception {
         Pattern keyPattern = Pattern.compile("Sec-WebSocket-Key: (.*)");
         Matcher matcher = keyPattern.matcher(request);
 
@@ -66,16 +274,48 @@ public class WebSocketClientHandler implements Runnable {
             String key = matcher.group(1).trim();
             String acceptKey = generateAcceptKey(key);
 
+            Matcher roomMatcher = ROOM_PATTERN.matcher(request);
+            if (roomMatcher.find()) {
+                requestedRoom = roomMatcher.group(1) != null ? roomMatcher.group(1) : roomMatcher.group(2);
+            }
+
+            // Négociation du mode binaire pour les trames d'écran
+            Matcher protocolMatcher = Pattern.compile("Sec-WebSocket-Protocol: (.*)", Pattern.CASE_INSENSITIVE)
+                    .matcher(request);
+            if (protocolMatcher.find()) {
+                for (String protocol : protocolMatcher.group(1).split(",")) {
+                    if (protocol.trim().equals(ScreenFrameProtocol.SUBPROTOCOL)) {
+                        binaryFrames = true;
+                        break;
+                    }
+                }
+            }
+
+            // Compression permessage-deflate si le client la propose
+            Matcher extensionsMatcher = Pattern.compile("Sec-WebSocket-Extensions: (.*)", Pattern.CASE_INSENSITIVE)
+                    .matcher(request);
+            PerMessageDeflate extension = null;
+            while (extension == null && extensionsMatcher.find()) {
+                extension = PerMessageDeflate.negotiate(extensionsMatcher.group(1).trim());
+            }
+            deflate = extension;
+            decoder.setDeflate(extension);
+
             String response = "HTTP/1.1 101 Switching Protocols\r\n" +
                     "Upgrade: websocket\r\n" +
                     "Connection: Upgrade\r\n" +
+                    (binaryFrames ? "Sec-WebSocket-Protocol: " + ScreenFrameProtocol.SUBPROTOCOL + "\r\n" : "") +
+                    (extension != null ? "Sec-WebSocket-Extensions: " + extension.responseHeader() + "\r\n" : "") +
                     "Sec-WebSocket-Accept: " + acceptKey + "\r\n\r\n";
 
-            output.write(response.getBytes("UTF-8"));
-            output.flush();
+            connection.write(new ByteBuffer[] {
+                    ByteBuffer.wrap(response.getBytes(StandardCharsets.UTF_8))
+            }, TrafficClass.CONTROL, null);
 
             isWebSocketConnected = true;
-            System.out.println("🤝 Handshake WebSocket réussi pour " + clientIP);
+            System.out.println("🤝 Handshake WebSocket réussi pour " + clientIP +
+                    (binaryFrames ? " (trames binaires" : " (trames texte") +
+                    (extension != null ? ", permessage-deflate)" : ")"));
         }
     }
 
@@ -86,274 +326,366 @@ public class WebSocketClientHandler implements Runnable {
         return Base64.getEncoder().encodeToString(hash);
     }
 
-    private void listenForMessages() throws IOException {
-        byte[] buffer = new byte[65536];
-        while (isWebSocketConnected && !socket.isClosed()) {
-            int bytesRead = input.read(buffer);
-            if (bytesRead > 0) {
-                String message = decodeWebSocketFrame(buffer, bytesRead);
-                if (message != null) {
-                    handleMessage(message);
-                }
-            }
-        }
+    // ── Traitement des messages, choisi par table selon leur type ──
+
+    @FunctionalInterface
+    private interface MessageHandler {
+        void handle(WebSocketClientHandler client, InboundMessage message) throws Exception;
     }
 
-    private String decodeWebSocketFrame(byte[] buffer, int length) {
-        if (length < 2) return null;
+    private static final Map<MessageType, MessageHandler> HANDLERS = new EnumMap<>(MessageType.class);
+
+    static {
+        HANDLERS.put(MessageType.CHAT_MESSAGE, WebSocketClientHandler::handleChatMessage);
+        HANDLERS.put(MessageType.FILE_UPLOAD_START, WebSocketClientHandler::handleFileUploadStart);
+        HANDLERS.put(MessageType.FILE_CHUNK, WebSocketClientHandler::handleFileChunk);
+        HANDLERS.put(MessageType.CAPABILITIES, WebSocketClientHandler::handleCapabilities);
+        HANDLERS.put(MessageType.REQUEST_FILE_LIST, (client, message) -> client.server.sendFileList(client));
+        HANDLERS.put(MessageType.DOWNLOAD_FILE, WebSocketClientHandler::handleDownloadFile);
+        HANDLERS.put(MessageType.REQUEST_CHUNK, WebSocketClientHandler::handleRequestChunk);
+        HANDLERS.put(MessageType.REQUEST_USER_LIST, WebSocketClientHandler::handleRequestUserList);
+        HANDLERS.put(MessageType.END_SESSION, WebSocketClientHandler::handleEndSession);
+        HANDLERS.put(MessageType.AUTHENTICATE, WebSocketClientHandler::handleAuthenticate);
+        HANDLERS.put(MessageType.REQUEST_CONTROL, WebSocketClientHandler::handleRequestControl);
+        HANDLERS.put(MessageType.SET_CAPTURE_PROFILE, WebSocketClientHandler::handleSetCaptureProfile);
+        HANDLERS.put(MessageType.SET_CODEC, WebSocketClientHandler::handleSetCodec);
+        HANDLERS.put(MessageType.SET_TIER, WebSocketClientHandler::handleSetTier);
+        HANDLERS.put(MessageType.RELEASE_CONTROL, WebSocketClientHandler::handleReleaseControl);
+        HANDLERS.put(MessageType.INPUT_EVENT, WebSocketClientHandler::handleInputEvent);
+        HANDLERS.put(MessageType.PING, (client, message) -> client.sendMessage("PONG"));
+    }
 
-        boolean masked = (buffer[1] & 0x80) != 0;
-        int payloadLength = buffer[1] & 0x7F;
-        int offset = 2;
+    private void handleMessage(InboundMessage message) {
+        MessageType type = message.getType();
 
-        if (payloadLength == 126) {
-            payloadLength = ((buffer[2] & 0xFF) << 8) | (buffer[3] & 0xFF);
-            offset = 4;
-        } else if (payloadLength == 127) {
-            long extendedLength = 0;
-            for (int i = 0; i < 8; i++) {
-                extendedLength = (extendedLength << 8) + (buffer[2 + i] & 0xFF);
-            }
-            if (extendedLength > Integer.MAX_VALUE) {
-                return null;
+        // Messages inconnus ou réservés aux clients authentifiés
+        if (type == null || (type.requiresAuthentication() && !isAuthenticated)) {
+            if (!isAuthenticated) {
+                sendMessage("NOT_AUTHENTICATED");
             }
-            payloadLength = (int) extendedLength;
-            offset = 10;
+            return;
         }
 
-        byte[] maskingKey = new byte[4];
-        if (masked) {
-            System.arraycopy(buffer, offset, maskingKey, 0, 4);
-            offset += 4;
+        try {
+            HANDLERS.get(type).handle(this, message);
+        } catch (Exception e) {
+            System.err.println("❌ Erreur traitement message de " + clientId + ": " + e.getMessage());
+            e.printStackTrace();
         }
+    }
 
-        byte[] payload = new byte[payloadLength];
-        System.arraycopy(buffer, offset, payload, 0, payloadLength);
+    private void handleChatMessage(InboundMessage message) {
+        server.handleChatMessage(clientId, message.rest());
+    }
 
-        if (masked) {
-            for (int i = 0; i < payloadLength; i++) {
-                payload[i] ^= maskingKey[i % 4];
-            }
+    private void handleFileUploadStart(InboundMessage message) {
+        if (message.remainingFields() < 3) {
+            return;
+        }
+        String fileName = message.nextField();
+        long fileSize = message.nextLong();
+        String fileType = message.nextField();
+
+        String sessionId = server.startFileUpload(clientId, fileName, fileSize, fileType);
+        if (sessionId != null) {
+            sendMessage("UPLOAD_SESSION:" + sessionId);
+            System.out.println("📁 Session upload créée: " + sessionId + " pour " + fileName);
+        } else {
+            sendMessage("UPLOAD_ERROR:File too large or invalid");
+            System.out.println("❌ Upload refusé pour " + fileName + " (trop volumineux)");
         }
-
-        return new String(payload, java.nio.charset.StandardCharsets.UTF_8);
     }
 
-    // ✅ MÉTHODE HANDLEMESSAGE ADAPTÉE POUR LA CONCURRENCE
-    private void handleMessage(String message) {
-        try {
-            if (message.startsWith("CHAT_MESSAGE:")) {
-                String chatMessage = message.substring("CHAT_MESSAGE:".length());
-                server.handleChatMessage(clientId, chatMessage);
-
-            } else if (message.startsWith("FILE_UPLOAD_START:")) {
-                String data = message.substring("FILE_UPLOAD_START:".length());
-                String[] parts = data.split(":");
-                if (parts.length >= 3) {
-                    String fileName = parts[0];
-                    long fileSize = Long.parseLong(parts[1]);
-                    String fileType = parts[2];
-
-                    String sessionId = server.startFileUpload(clientId, fileName, fileSize, fileType);
-                    if (sessionId != null) {
-                        sendMessage("UPLOAD_SESSION:" + sessionId);
-                        System.out.println("📁 Session upload créée: " + sessionId + " pour " + fileName);
-                    } else {
-                        sendMessage("UPLOAD_ERROR:File too large or invalid");
-                        System.out.println("❌ Upload refusé pour " + fileName + " (trop volumineux)");
-                    }
-                }
+    private void handleFileChunk(InboundMessage message) {
+        if (message.remainingFields() < 3) {
+            return;
+        }
+        String sessionId = message.nextField();
+        int chunkIndex = message.nextInt();
+        // Décodé directement depuis les octets reçus
+        byte[] chunkData = message.restAsBase64();
 
-            } else if (message.startsWith("FILE_CHUNK:")) {
-                String data = message.substring("FILE_CHUNK:".length());
-                String[] parts = data.split(":", 3);
-                if (parts.length >= 3) {
-                    String sessionId = parts[0];
-                    int chunkIndex = Integer.parseInt(parts[1]);
-                    byte[] chunkData = Base64.getDecoder().decode(parts[2]);
+        boolean success = server.receiveFileChunk(clientId, sessionId, chunkIndex, chunkData);
+        sendMessage("CHUNK_ACK:" + sessionId + ":" + chunkIndex + ":" + success);
 
-                    boolean success = server.receiveFileChunk(sessionId, chunkIndex, chunkData);
-                    sendMessage("CHUNK_ACK:" + sessionId + ":" + chunkIndex + ":" + success);
+        if (chunkIndex % 10 == 0) {
+            System.out.println("📦 Chunk " + chunkIndex + " reçu pour session " + sessionId);
+        }
+    }
 
-                    if (chunkIndex % 10 == 0) {
-                        System.out.println("📦 Chunk " + chunkIndex + " reçu pour session " + sessionId);
-                    }
-                }
+    // Capacités optionnelles annoncées par le client (ex : "tiles")
+    private void handleCapabilities(InboundMessage message) {
+        if (message.restContainsItem("tiles", ',') && binaryFrames) {
+            tileUpdates = true;
+            needsKeyframe = true;
+        }
+
+        // Un codec autre que celui par défaut n'est accepté par SET_CODEC que si le client l'annonce
+        StringBuilder ack = new StringBuilder(tileUpdates ? "tiles" : "");
+        Set<String> codecs = new HashSet<>();
+        for (String codec : FrameCodecs.NAMES) {
+            if (binaryFrames && !codec.equals(FrameCodecs.DEFAULT) && message.restContainsItem(codec, ',')) {
+                codecs.add(codec);
+                ack.append(ack.length() > 0 ? "," : "").append(codec);
+            }
+        }
+        decodableCodecs = codecs;
+        if (!frameCodec.equals(FrameCodecs.DEFAULT) && !codecs.contains(frameCodec)) {
+            frameCodec = FrameCodecs.DEFAULT;
+            requestKeyframe();
+        }
+        sendMessage("CAPABILITIES_ACK:" + ack);
+    }
 
-            } else if (message.equals("REQUEST_FILE_LIST")) {
-                server.sendFileList(this);
+    private void handleDownloadFile(InboundMessage message) {
+        server.startFileDownload(clientId, message.rest(), this);
+    }
 
-            } else if (message.startsWith("DOWNLOAD_FILE:")) {
-                String fileName = message.substring("DOWNLOAD_FILE:".length());
-                server.startFileDownload(clientId, fileName, this);
+    private void handleRequestChunk(InboundMessage message) {
+        if (message.remainingFields() < 2) {
+            return;
+        }
+        String sessionId = message.nextField();
+        int chunkIndex = message.nextInt();
+        server.sendFileChunk(sessionId, chunkIndex, this);
+    }
 
-            } else if (message.startsWith("REQUEST_CHUNK:")) {
-                String data = message.substring("REQUEST_CHUNK:".length());
-                String[] parts = data.split(":");
-                if (parts.length >= 2) {
-                    String sessionId = parts[0];
-                    int chunkIndex = Integer.parseInt(parts[1]);
-                    server.sendFileChunk(sessionId, chunkIndex, this);
-                }
+    // ✅ NOUVEAU : Gestion de la demande de liste des utilisateurs
+    private void handleRequestUserList(InboundMessage message) {
+        if (isAuthenticated) {
+            server.sendUserListToClient(this);
+        } else {
+            sendMessage("NOT_AUTHENTICATED");
+        }
+    }
 
-                // ✅ NOUVEAU : Gestion de la demande de liste des utilisateurs
-            } else if (message.equals("REQUEST_USER_LIST")) {
-                if (isAuthenticated) {
-                    server.sendUserListToClient(this);
-                } else {
-                    sendMessage("NOT_AUTHENTICATED");
-                }
+    // ✅ GESTION : Fermeture de session par le client
+    private void handleEndSession(InboundMessage message) {
+        System.out.println("🔚 Demande de fermeture de session reçue du client: " + clientId);
+        server.endClientSession(clientId, this);
+    }
 
-                // ✅ GESTION : Fermeture de session par le client
-            } else if (message.equals("END_SESSION")) {
-                System.out.println("🔚 Demande de fermeture de session reçue du client: " + clientId);
-                server.endClientSession(clientId, this);
-                return;
+    private void handleAuthenticate(InboundMessage message) {
+        String password = message.nextField();
+        String displayName = message.hasNext() ? message.rest() : "User-" + clientId.substring(0, 4);
 
-            } else if (message.startsWith("AUTHENTICATE:")) {
-                String authData = message.substring("AUTHENTICATE:".length());
+        System.out.println("🔐 Tentative d'authentification - Client: " + clientId + ", Password: " + password + ", DisplayName: " + displayName);
 
-                String password;
-                String displayName;
+        if (server.authenticatePassword(clientId, password)) {
+            isAuthenticated = true;
+            server.authenticateClient(clientId, clientIP, displayName);
+            sendMessage("AUTHENTICATION_SUCCESS");
+            System.out.println("✅ Client authentifié: " + displayName + " (" + clientId + " - " + clientIP + ")");
+        } else {
+            sendMessage("AUTHENTICATION_FAILED");
+            System.out.println("❌ Échec authentification: " + clientIP + " (mot de passe incorrect)");
+            disconnect();
+        }
+    }
 
-                if (authData.contains(":")) {
-                    String[] parts = authData.split(":", 2);
-                    password = parts[0];
-                    displayName = parts.length > 1 ? parts[1] : "User-" + clientId.substring(0, 4);
-                } else {
-                    password = authData;
-                    displayName = "User-" + clientId.substring(0, 4);
-                }
+    // ✅ AMÉLIORATION : Gestion du contrôle avec file d'attente
+    private void handleRequestControl(InboundMessage message) {
+        boolean granted = server.requestControl(clientId);
+        sendMessage("CONTROL_RESPONSE:" + granted);
 
-                System.out.println("🔐 Tentative d'authentification - Client: " + clientId + ", Password: " + password + ", DisplayName: " + displayName);
-
-                if (server.authenticatePassword(clientId, password)) {
-                    isAuthenticated = true;
-                    server.authenticateClient(clientId, clientIP, displayName);
-                    sendMessage("AUTHENTICATION_SUCCESS");
-                    System.out.println("✅ Client authentifié: " + displayName + " (" + clientId + " - " + clientIP + ")");
-                } else {
-                    sendMessage("AUTHENTICATION_FAILED");
-                    System.out.println("❌ Échec authentification: " + clientIP + " (mot de passe incorrect)");
-                    disconnect();
-                }
-                return;
+        if (!granted) {
+            // Envoyer la position dans la file
+            int position = session.getControlQueue().getQueuePosition(clientId);
+            if (position > 0) {
+                sendMessage("QUEUE_POSITION:" + position);
             }
+        }
+    }
 
-            // Vérifier l'authentification pour les autres messages
-            if (!isAuthenticated) {
-                sendMessage("NOT_AUTHENTICATED");
-                return;
-            }
+    private void handleSetCaptureProfile(InboundMessage message) {
+        CaptureProfile profile = CaptureProfile.fromName(message.rest().trim());
+        if (profile != null) {
+            captureProfile = profile;
+            streamTier = null;
+            requestKeyframe();
+            sendMessage("CAPTURE_PROFILE:" + profile.getName());
+        } else {
+            sendMessage("CAPTURE_PROFILE_ERROR:Unknown profile");
+        }
+    }
 
-            // ✅ AMÉLIORATION : Gestion du contrôle avec file d'attente
-            if (message.equals("REQUEST_CONTROL")) {
-                boolean granted = server.requestControl(clientId);
-                sendMessage("CONTROL_RESPONSE:" + granted);
+    // Le palier fixe profil et qualité ; l'image déjà encodée pour ses autres abonnés sert de point de départ
+    private void handleSetTier(InboundMessage message) {
+        StreamTier tier = StreamTier.fromName(message.rest().trim());
+        if (tier == null) {
+            sendMessage("TIER_ERROR:Unknown tier");
+            return;
+        }
+        StreamTier previous = streamTier;
+        captureProfile = tier.getProfile();
+        streamTier = tier;
+        sendMessage("TIER:" + tier.getName());
+        if (tier != previous && !server.sendLatestTierFrame(this, tier)) {
+            requestKeyframe();
+        }
+    }
 
-                if (!granted) {
-                    // Envoyer la position dans la file
-                    int position = server.getControlQueue().getQueuePosition(clientId);
-                    if (position > 0) {
-                        sendMessage("QUEUE_POSITION:" + position);
-                    }
-                }
+    // Les clients texte (Base64) restent en JPEG : le format texte ne porte pas le codec
+    private void handleSetCodec(InboundMessage message) {
+        String codec = message.rest().trim().toLowerCase();
+        if (!FrameCodecs.isSupported(codec)) {
+            sendMessage("CODEC_ERROR:Unsupported codec");
+        } else if (!codec.equals(FrameCodecs.DEFAULT) && !decodableCodecs.contains(codec)) {
+            sendMessage("CODEC_ERROR:Codec not advertised in CAPABILITIES");
+        } else {
+            frameCodec = codec;
+            requestKeyframe();
+            sendMessage("CODEC:" + codec);
+        }
+    }
 
-            } else if (message.equals("RELEASE_CONTROL")) {
-                server.releaseControl(clientId);
-                sendMessage("CONTROL_RESPONSE:false");
+    private void handleReleaseControl(InboundMessage message) {
+        server.releaseControl(clientId);
+        sendMessage("CONTROL_RESPONSE:false");
+    }
 
-                // ✅ AMÉLIORATION : Gestion des événements d'entrée avec rafraîchissement d'activité
-            } else if (message.startsWith("INPUT_EVENT:")) {
-                if (server.hasControl(clientId)) {
-                    String inputData = message.substring("INPUT_EVENT:".length());
+    // ✅ AMÉLIORATION : Gestion des événements d'entrée avec rafraîchissement d'activité
+    // Repli JSON (clients texte) ; le format binaire ne passe pas par ici (voir onBinaryInputEvent)
+    private void handleInputEvent(InboundMessage message) {
+        if (!InputEventCodec.decodeJson(message.rest(), inputEvent)) {
+            System.out.println("⚠️ Événement d'entrée invalide de " + clientId);
+            return;
+        }
+        if (acceptInputEvent(inputEvent)) {
+            server.getControlExecutor().submit(inputEvent);
+        }
+    }
 
-                    // ✅ NOUVEAU : Rafraîchir l'activité pour éviter timeout
-                    server.getControlQueue().refreshActivity(clientId);
+    /**
+     * Le client envoie ses positions en pixels de l'image qu'il affiche. Elles
+     * sont mises à l'échelle de la région capturée puis décalées par son
+     * origine : un clic tombe au même endroit de l'écran que sur l'image, quel
+     * que soit le profil, le moniteur choisi ou le sous-rectangle diffusé.
+     */
+    private void mapToScreen(CustomInputEvent event) {
+        if (!event.hasPosition()) {
+            return;
+        }
+        Rectangle region = server.getCaptureRegion();
+        long size = frameSize;
+        int frameWidth = (int) (size >>> 32);
+        int frameHeight = (int) size;
+        int x = event.getX();
+        int y = event.getY();
+        if (frameWidth > 0 && frameHeight > 0) {
+            x = (int) ((long) x * region.width / frameWidth);
+            y = (int) ((long) y * region.height / frameHeight);
+        }
+        x = Math.max(0, Math.min(region.width - 1, x));
+        y = Math.max(0, Math.min(region.height - 1, y));
+        event.setPosition(region.x + x, region.y + y);
+    }
 
-                    // ✅ NOUVEAU : Log détaillé pour debug clavier
-                    if (inputData.contains("KEY_")) {
-                        System.out.println("🎯 Événement clavier reçu de " + clientId + ": " + inputData);
-                    }
+    // Vérifie le contrôle et rafraîchit l'activité ; sans verrou (voir ControlQueue)
+    private boolean acceptInputEvent(CustomInputEvent event) {
+        ControlQueue controlQueue = session.getControlQueue();
+        if (!controlQueue.hasControl(clientId)) {
+            System.out.println("⚠️ Tentative d'envoi d'événement sans contrôle: " + clientId);
+            return false;
+        }
 
-                    controlExecutor.executeInputEvent(inputData);
-                } else {
-                    System.out.println("⚠️ Tentative d'envoi d'événement sans contrôle: " + clientId);
-                }
+        // ✅ NOUVEAU : Rafraîchir l'activité pour éviter timeout
+        controlQueue.refreshActivity(clientId);
+        mapToScreen(event);
 
-            } else if (message.equals("PING")) {
-                sendMessage("PONG");
-            }
-        } catch (Exception e) {
-            System.err.println("❌ Erreur traitement message de " + clientId + ": " + e.getMessage());
-            e.printStackTrace();
+        // ✅ NOUVEAU : Log détaillé pour debug clavier
+        CustomInputEvent.EventType type = event.getType();
+        if (type == CustomInputEvent.EventType.KEY_PRESS || type == CustomInputEvent.EventType.KEY_RELEASE) {
+            System.out.println("🎯 Événement clavier reçu de " + clientId + ": " + type + " (" + event.getKeyCode() + ")");
         }
+        return true;
     }
 
     public void sendMessage(String message) {
-        sendMessageInternal(message, false);
+        sendMessage(message, TrafficClass.CONTROL);
     }
 
-    public void sendMessageFast(String message) {
-        sendMessageInternal(message, true);
+    public void sendMessage(String message, TrafficClass trafficClass) {
+        if (!isWebSocketConnected) return;
+        sendPrepared(PreparedFrame.text(message, trafficClass));
     }
 
-    private void sendMessageInternal(String message, boolean fast) {
+    // Envoi depuis une échéance de la roue temporelle : un échec d'écriture ne ferme pas sur ce thread
+    void sendMessageFromTimer(String message) {
+        if (!isWebSocketConnected) return;
+        sendPrepared(PreparedFrame.text(message, TrafficClass.CONTROL), null, true);
+    }
+
+    // Trame déjà encodée, partagée entre tous les destinataires d'une diffusion
+    public void sendPrepared(PreparedFrame frame) {
+        sendPrepared(frame, null);
+    }
+
+    // onWritten : appelé une fois la trame remise au système (mesure de latence du flux d'écran)
+    void sendPrepared(PreparedFrame frame, Runnable onWritten) {
+        sendPrepared(frame, onWritten, false);
+    }
+
+    // fromTimer : appelant sur la roue temporelle, la déconnexion sur échec passe par disconnectLater()
+    private void sendPrepared(PreparedFrame frame, Runnable onWritten, boolean fromTimer) {
         if (!isWebSocketConnected) return;
 
         try {
-            byte[] messageBytes = message.getBytes("UTF-8");
-            byte[] frame;
-
-            if (messageBytes.length < 126) {
-                frame = new byte[2 + messageBytes.length];
-                frame[0] = (byte) 0x81;
-                frame[1] = (byte) messageBytes.length;
-                System.arraycopy(messageBytes, 0, frame, 2, messageBytes.length);
-            } else if (messageBytes.length < 65536) {
-                frame = new byte[4 + messageBytes.length];
-                frame[0] = (byte) 0x81;
-                frame[1] = 126;
-                frame[2] = (byte) (messageBytes.length >> 8);
-                frame[3] = (byte) (messageBytes.length & 0xFF);
-                System.arraycopy(messageBytes, 0, frame, 4, messageBytes.length);
-            } else {
-                frame = new byte[10 + messageBytes.length];
-                frame[0] = (byte) 0x81;
-                frame[1] = 127;
-                long len = messageBytes.length;
-                for (int i = 0; i < 8; i++) {
-                    frame[9 - i] = (byte) (len & 0xFF);
-                    len >>= 8;
+            PerMessageDeflate extension = deflate;
+            if (extension != null && extension.shouldCompress(frame)) {
+                if (extension.usesContextTakeover()) {
+                    // Le contexte partagé impose que l'ordre de compression soit l'ordre d'envoi :
+                    // la compression a lieu dans l'écrivain, quand la trame quitte la file
+                    PreparedFrame uncompressed = frame;
+                    connection.write(() -> {
+                        synchronized (extension) {
+                            return extension.compress(uncompressed).buffers();
+                        }
+                    }, frame.length(), frame.getTrafficClass(), onWritten);
+                    return;
                 }
-                System.arraycopy(messageBytes, 0, frame, 10, messageBytes.length);
+                frame = extension.compress(frame);
             }
-
-            if (fast) {
-                output.write(frame);
-                output.flush();
+            connection.write(frame.buffers(), frame.getTrafficClass(), onWritten);
+        } catch (IOException e) {
+            if (connection.isOpen()) {
+                // Connexion encore ouverte : file d'émission pleine, le client ne lit plus
+                System.err.println("⚠️ Client trop lent, déconnexion de " + clientId + ": " + e.getMessage());
+            }
+            if (fromTimer) {
+                disconnectLater();
             } else {
-                synchronized (output) {
-                    output.write(frame);
-                    output.flush();
-                }
+                disconnect();
             }
-
-        } catch (IOException e) {
-            disconnect();
         }
     }
 
     public void disconnect() {
         isWebSocketConnected = false;
+        TimerWheel.Timeout pending = heartbeat;
+        if (pending != null) {
+            pending.cancel();
+        }
         server.removeClient(this);
-        try {
-            if (socket != null) socket.close();
-        } catch (IOException e) {
-            // Ignorer
+        connection.close();
+
+        PerMessageDeflate extension = deflate;
+        if (extension != null) {
+            synchronized (extension) {
+                extension.end();
+            }
         }
     }
 
+    /**
+     * Déconnexion demandée depuis une échéance de la roue temporelle : sortie
+     * de salle, notifications et fermeture se font sur la voie de chat du
+     * client, le thread de la roue ne fait que la demander.
+     */
+    void disconnectLater() {
+        chatLane.execute(this::disconnect);
+    }
+
     public String getClientId() {
         return clientId;
     }
@@ -362,11 +694,73 @@ public class WebSocketClientHandler implements Runnable {
         return clientIP;
     }
 
-    public Socket getSocket() {
-        return socket;
+    public Session getSession() {
+        return session;
+    }
+
+    ClientConnection getConnection() {
+        return connection;
+    }
+
+    public boolean supportsBinaryFrames() {
+        return binaryFrames;
+    }
+
+    public boolean supportsTileUpdates() {
+        return tileUpdates;
+    }
+
+    // Un client en mode tuiles doit recevoir une image complète avant toute mise à jour partielle
+    public boolean needsKeyframe() {
+        return needsKeyframe;
+    }
+
+    public void markKeyframeSent() {
+        needsKeyframe = false;
+    }
+
+    public void requestKeyframe() {
+        needsKeyframe = true;
+    }
+
+    // Dépose une image dans la file de profondeur un du client (jamais bloquant)
+    public void offerFrame(PreparedFrame frame, boolean keyframe, boolean delta, int width, int height) {
+        setFrameSize(width, height);
+        frameSender.offer(frame, keyframe, delta);
+    }
+
+    // Mise à jour par tuiles : fusionnée avec la précédente si celle-ci n'est pas encore partie
+    public void offerTileUpdate(PreparedFrame frame, TileUpdate update, long frameId, int width, int height) {
+        setFrameSize(width, height);
+        frameSender.offerTiles(frame, update, frameId, width, height);
+    }
+
+    private void setFrameSize(int width, int height) {
+        frameSize = ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+
+    public CaptureProfile getCaptureProfile() {
+        return captureProfile;
+    }
+
+    public String getFrameCodec() {
+        return frameCodec;
+    }
+
+    public QualityLevel getQualityLevel() {
+        StreamTier tier = streamTier;
+        return tier != null ? tier.getQuality() : frameSender.getController().getQuality();
+    }
+
+    public StreamTier getStreamTier() {
+        return streamTier;
+    }
+
+    public AdaptiveStreamController getStreamController() {
+        return frameSender.getController();
     }
 
     public boolean isConnected() {
-        return isWebSocketConnected && socket != null && !socket.isClosed();
+        return isWebSocketConnected && connection.isOpen();
     }
 }
\ No newline at end of file
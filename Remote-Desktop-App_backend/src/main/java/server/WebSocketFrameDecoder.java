@@ -0,0 +1,290 @@
+package main.java.server;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * Décodeur WebSocket incrémental (RFC 6455), un par connexion.
+ *
+ * Les octets sont fournis au fil des lectures, sans hypothèse sur leur
+ * découpage : une trame peut arriver en plusieurs morceaux et une lecture
+ * peut contenir plusieurs trames. Les messages fragmentés sont réassemblés
+ * et les trames de contrôle (PING, PONG, CLOSE) peuvent s'intercaler.
+ *
+ * Le contenu est démasqué au moment de la copie dans un tampon réutilisé
+ * d'un message à l'autre : aucune allocation par trame. Les messages
+ * compressés (RSV1, permessage-deflate) sont décompressés une fois complets.
+ * Une instance n'est pas thread-safe (utilisée par le lecteur de la connexion).
+ */
+class WebSocketFrameDecoder {
+
+    interface Listener {
+        // Message complet ; le tableau est réutilisé après le retour
+        void onMessage(int opcode, byte[] payload, int length);
+
+        void onPing(byte[] payload, int length);
+
+        void onClose(int code);
+
+        // Trame invalide : la connexion doit être fermée avec ce code
+        void onProtocolError(int code, String reason);
+    }
+
+    static final int OPCODE_CONTINUATION = 0x0;
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_BINARY = 0x2;
+    static final int OPCODE_CLOSE = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+
+    static final int CLOSE_NORMAL = 1000;
+    static final int CLOSE_PROTOCOL_ERROR = 1002;
+    static final int CLOSE_INVALID_DATA = 1007;
+    static final int CLOSE_TOO_BIG = 1009;
+
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int SHRINK_THRESHOLD = 1 << 20;
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+
+    private final int maxMessageSize;
+
+    // En-tête de la trame en cours (2 à 14 octets)
+    private final byte[] header = new byte[14];
+    private int headerRead = 0;
+    private int headerLength = 2;
+
+    // Trame en cours
+    private boolean fin;
+    private int opcode;
+    private boolean masked;
+    private final byte[] mask = new byte[4];
+    private long payloadRemaining;
+    private int payloadRead;
+
+    // Message de données en cours de réassemblage
+    private byte[] message = new byte[INITIAL_CAPACITY];
+    private int messageLength = 0;
+    private int messageOpcode = -1;
+    private boolean messageCompressed = false;
+
+    // permessage-deflate négocié au handshake (null sinon) : seul RSV1 est alors autorisé
+    private PerMessageDeflate deflate;
+
+    // Contenu des trames de contrôle, qui peuvent s'intercaler dans un message fragmenté
+    private final byte[] control = new byte[MAX_CONTROL_PAYLOAD];
+    private int controlLength = 0;
+
+    private boolean failed = false;
+
+    WebSocketFrameDecoder(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    void setDeflate(PerMessageDeflate deflate) {
+        this.deflate = deflate;
+    }
+
+    void feed(byte[] data, int offset, int length, Listener listener) {
+        int position = offset;
+        int end = offset + length;
+
+        while (position < end && !failed) {
+            if (headerRead < headerLength) {
+                int count = Math.min(headerLength - headerRead, end - position);
+                System.arraycopy(data, position, header, headerRead, count);
+                headerRead += count;
+                position += count;
+
+                if (headerRead == 2) {
+                    headerLength = computeHeaderLength();
+                }
+                if (headerRead < headerLength) {
+                    continue;
+                }
+                if (!startFrame(listener)) {
+                    return;
+                }
+                if (payloadRemaining > 0) {
+                    continue;
+                }
+            } else {
+                int count = (int) Math.min(payloadRemaining, end - position);
+                readPayload(data, position, count);
+                position += count;
+                payloadRemaining -= count;
+                if (payloadRemaining > 0) {
+                    continue;
+                }
+            }
+
+            finishFrame(listener);
+        }
+    }
+
+    private int computeHeaderLength() {
+        int length = 2;
+        int lengthCode = header[1] & 0x7F;
+        if (lengthCode == 126) {
+            length += 2;
+        } else if (lengthCode == 127) {
+            length += 8;
+        }
+        if ((header[1] & 0x80) != 0) {
+            length += 4;
+        }
+        return length;
+    }
+
+    // En-tête complet : valide la trame et prépare la lecture du contenu
+    private boolean startFrame(Listener listener) {
+        fin = (header[0] & 0x80) != 0;
+        opcode = header[0] & 0x0F;
+        masked = (header[1] & 0x80) != 0;
+
+        int lengthCode = header[1] & 0x7F;
+        int index = 2;
+        long length;
+        if (lengthCode == 126) {
+            length = ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+            index = 4;
+        } else if (lengthCode == 127) {
+            length = 0;
+            for (int i = 0; i < 8; i++) {
+                length = (length << 8) | (header[2 + i] & 0xFF);
+            }
+            index = 10;
+        } else {
+            length = lengthCode;
+        }
+        if (masked) {
+            System.arraycopy(header, index, mask, 0, 4);
+        }
+
+        payloadRemaining = length;
+        payloadRead = 0;
+
+        boolean rsv1 = (header[0] & 0x40) != 0;
+        if ((header[0] & 0x30) != 0 || (rsv1 && (deflate == null || opcode == OPCODE_CONTINUATION
+                || opcode >= OPCODE_CLOSE))) {
+            return fail(listener, CLOSE_PROTOCOL_ERROR, "Bits réservés");
+        }
+
+        if (opcode >= OPCODE_CLOSE) {
+            if (opcode > OPCODE_PONG) {
+                return fail(listener, CLOSE_PROTOCOL_ERROR, "Opcode inconnu: " + opcode);
+            }
+            if (!fin || length > MAX_CONTROL_PAYLOAD) {
+                return fail(listener, CLOSE_PROTOCOL_ERROR, "Trame de contrôle invalide");
+            }
+            controlLength = 0;
+            return true;
+        }
+
+        if (opcode == OPCODE_CONTINUATION) {
+            if (messageOpcode < 0) {
+                return fail(listener, CLOSE_PROTOCOL_ERROR, "Continuation sans message");
+            }
+        } else if (opcode == OPCODE_TEXT || opcode == OPCODE_BINARY) {
+            if (messageOpcode >= 0) {
+                return fail(listener, CLOSE_PROTOCOL_ERROR, "Message fragmenté interrompu");
+            }
+            messageOpcode = opcode;
+            messageCompressed = rsv1;
+            messageLength = 0;
+        } else {
+            return fail(listener, CLOSE_PROTOCOL_ERROR, "Opcode inconnu: " + opcode);
+        }
+
+        if (length < 0 || messageLength + length > maxMessageSize) {
+            return fail(listener, CLOSE_TOO_BIG, "Message trop volumineux");
+        }
+        ensureCapacity(messageLength + (int) length);
+        return true;
+    }
+
+    // Copie et démasque en une passe dans le tampon de destination
+    private void readPayload(byte[] data, int position, int count) {
+        byte[] target;
+        int targetOffset;
+        if (opcode >= OPCODE_CLOSE) {
+            target = control;
+            targetOffset = controlLength;
+            controlLength += count;
+        } else {
+            target = message;
+            targetOffset = messageLength;
+            messageLength += count;
+        }
+
+        System.arraycopy(data, position, target, targetOffset, count);
+        if (masked) {
+            int maskIndex = payloadRead & 3;
+            for (int i = 0; i < count; i++) {
+                target[targetOffset + i] ^= mask[maskIndex];
+                maskIndex = (maskIndex + 1) & 3;
+            }
+        }
+        payloadRead += count;
+    }
+
+    private void finishFrame(Listener listener) {
+        headerRead = 0;
+        headerLength = 2;
+
+        switch (opcode) {
+            case OPCODE_PING:
+                listener.onPing(control, controlLength);
+                return;
+            case OPCODE_PONG:
+                return;
+            case OPCODE_CLOSE:
+                int code = controlLength >= 2
+                        ? ((control[0] & 0xFF) << 8) | (control[1] & 0xFF)
+                        : CLOSE_NORMAL;
+                failed = true;
+                listener.onClose(code);
+                return;
+            default:
+                break;
+        }
+
+        if (fin) {
+            int completedOpcode = messageOpcode;
+            messageOpcode = -1;
+            if (messageCompressed) {
+                try {
+                    deflate.inflate(message, messageLength, maxMessageSize);
+                } catch (DataFormatException e) {
+                    fail(listener, CLOSE_INVALID_DATA, e.getMessage());
+                    return;
+                }
+                listener.onMessage(completedOpcode, deflate.getInflated(), deflate.getInflatedLength());
+                deflate.releaseInflated();
+            } else {
+                listener.onMessage(completedOpcode, message, messageLength);
+            }
+            messageLength = 0;
+
+            // Ne pas garder indéfiniment le tampon d'un gros message ponctuel
+            if (message.length > SHRINK_THRESHOLD) {
+                message = new byte[INITIAL_CAPACITY];
+            }
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > message.length) {
+            int capacity = message.length;
+            while (capacity < required) {
+                capacity = Math.min(maxMessageSize, capacity * 2);
+            }
+            message = Arrays.copyOf(message, capacity);
+        }
+    }
+
+    private boolean fail(Listener listener, int code, String reason) {
+        failed = true;
+        listener.onProtocolError(code, reason);
+        return false;
+    }
+}
@@ -1,62 +1,110 @@
 package main.java.server;
 
+import java.awt.Rectangle;
 import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import main.java.capture.CapturePipeline;
+import main.java.capture.CaptureProfile;
+import main.java.capture.CapturedFrame;
+import main.java.capture.FrameCodecs;
+import main.java.capture.FrameDemand;
+import main.java.capture.QualityLevel;
 import main.java.capture.ScreenCapturer;
+import main.java.capture.StreamTier;
+import main.java.capture.TileUpdate;
 import main.java.chat.ChatManager;
+import main.java.control.ControlExecutor;
 import main.java.filetransfer.FileTransferManager;
 import main.java.filetransfer.FileInfo;
 import main.java.filetransfer.FileTransferSession;
+import main.java.models.Client;
+import main.java.models.Session;
+import main.java.utils.TimerWheel;
 
 public class WebSocketServer {
     private static final int WEBSOCKET_PORT = 8081;
+    // "nio" (défaut) : un Selector pour toutes les connexions ; "blocking" : un thread par connexion ;
+    // "virtual" : sockets bloquantes sur threads virtuels (Java 21+, sinon repli sur "blocking")
+    private static final String TRANSPORT = System.getProperty("rc.transport", "nio");
+    // Threads dédiés aux messages de fichiers (lectures, écritures et fsync) : borne la charge disque
+    private static final int FILE_WORKERS = Integer.getInteger("rc.fileWorkers", 4);
+    // Roue temporelle commune : 100 ms par emplacement, 512 emplacements (51,2 s par tour)
+    private static final long TIMER_TICK_MS = 100;
+    private static final int TIMER_SLOTS = 512;
+    // Salles hébergées au plus par ce processus (salle par défaut comprise)
+    private static final int MAX_ROOMS = Integer.getInteger("rc.maxRooms", 64);
     private ServerSocket serverSocket;
+    private NioTransport nioTransport;
     private volatile boolean isRunning = false;
-    private List<WebSocketClientHandler> clients = new CopyOnWriteArrayList<>();
-    private ControlQueue controlQueue;
+    private final ClientRegistry clients = new ClientRegistry();
+    // Un seul Robot pour tout le serveur : seul le contrôleur courant y envoie ses événements
+    private ControlExecutor controlExecutor;
     private ScreenCapturer screenCapturer;
-    private ScheduledExecutorService screenCaptureExecutor;
-    private ScheduledExecutorService heartbeatExecutor;
+    // Toutes les échéances du serveur : contrôle, demandes de connexion, transferts, présence des clients
+    private TimerWheel timers;
     private ExecutorService clientExecutor;
+    private ExecutorService frameSendExecutor;
+    private ExecutorService fileExecutor;
+    private ScheduledExecutorService frameScheduler;
     private AuthenticationManager authManager;
     private Scanner consoleScanner;
-    private ChatManager chatManager;
-    private FileTransferManager fileTransferManager;
 
-    // Map pour stocker les noms d'affichage
-    private Map<String, String> clientDisplayNames = new ConcurrentHashMap<>();
+    // Salles : créées au premier client, retirées quand elles se vident (sauf la salle par défaut)
+    private final ConcurrentHashMap<String, Session> rooms = new ConcurrentHashMap<>();
+    private Session defaultSession;
+    // Salle visée par les commandes de la console (commande "room")
+    private volatile String consoleRoomId = Session.DEFAULT_ID;
+    // Arbitre d'entrée : le bureau n'a qu'un clavier et une souris (ControlExecutor unique), seule
+    // cette salle peut accorder le contrôle. Salle par défaut sauf "room <id> input" ; changement sous inputLock.
+    private final Object inputLock = new Object();
+    private volatile String inputRoomId = Session.DEFAULT_ID;
+
+    // Membres authentifiés de toutes les salles (nom d'affichage, salle)
+    private Map<String, Client> members = new ConcurrentHashMap<>();
 
     // Optimisations
     private AtomicLong frameCounter = new AtomicLong(0);
-    private volatile byte[] lastScreenData = null;
-    private final Object screenDataLock = new Object();
-    private long lastBroadcastTime = 0;
-    private static final long MIN_BROADCAST_INTERVAL = 100;
+    private CapturePipeline capturePipeline;
+    // Dernières images publiées, par profil : un changement de palier repart de l'image déjà encodée
+    private final Object publishLock = new Object();
+    private Map<CaptureProfile, CapturedFrame> latestFrames = Map.of(); // protégé par publishLock
 
     public WebSocketServer() {
-        this.controlQueue = new ControlQueue();
-        this.controlQueue.setServer(this); // ✅ NOUVEAU : Référence pour notifications
+        this.timers = new TimerWheel("rc-timers", TIMER_TICK_MS, TIMER_SLOTS);
+        this.fileExecutor = Executors.newFixedThreadPool(Math.max(1, FILE_WORKERS));
+        this.defaultSession = createSession(Session.DEFAULT_ID);
+        this.rooms.put(Session.DEFAULT_ID, defaultSession);
         this.screenCapturer = new ScreenCapturer();
-        this.screenCaptureExecutor = Executors.newSingleThreadScheduledExecutor();
-        this.heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
-        this.clientExecutor = Executors.newCachedThreadPool();
-        this.authManager = new AuthenticationManager();
+        this.controlExecutor = new ControlExecutor();
+        if (TRANSPORT.equalsIgnoreCase("virtual")) {
+            // Lecteurs, écrivains et envois d'images sur threads virtuels : quelques Ko par client inactif
+            this.clientExecutor = VirtualThreads.newPerTaskExecutor();
+            this.frameSendExecutor = VirtualThreads.newPerTaskExecutor();
+        } else {
+            this.clientExecutor = Executors.newCachedThreadPool();
+            this.frameSendExecutor = Executors.newCachedThreadPool();
+        }
+        this.frameScheduler = Executors.newSingleThreadScheduledExecutor();
+        this.authManager = new AuthenticationManager(timers);
         this.consoleScanner = new Scanner(System.in);
-        this.chatManager = new ChatManager();
-        this.fileTransferManager = new FileTransferManager();
     }
 
     public void start() throws IOException {
-        serverSocket = new ServerSocket(WEBSOCKET_PORT);
+        boolean virtual = TRANSPORT.equalsIgnoreCase("virtual");
+        boolean blocking = virtual || TRANSPORT.equalsIgnoreCase("blocking");
+        if (blocking) {
+            serverSocket = new ServerSocket(WEBSOCKET_PORT);
+        } else {
+            nioTransport = new NioTransport(this);
+            nioTransport.bind(WEBSOCKET_PORT);
+        }
         isRunning = true;
 
         printStartupInfo();
         startScreenCapture();
-        startHeartbeatService();
         startConsoleHandler();
 
         System.out.println("🟢 Serveur WebSocket prêt sur le port " + WEBSOCKET_PORT);
@@ -65,18 +113,40 @@ public class WebSocketServer {
         System.out.println("📁 Transfert de fichiers activé");
         System.out.println("👥 Liste d'utilisateurs en temps réel activée");
         System.out.println("🔑 Génération automatique de mots de passe activée");
-        System.out.println("⏱️ Contrôle limité: 4 minutes | Inactivité: 1 minute\n");
+        System.out.println("⏱️ Contrôle limité: 4 minutes | Inactivité: 1 minute");
+        System.out.println("🔌 Transport: " + (!blocking ? "NIO (Selector)"
+                : virtual && VirtualThreads.isAvailable() ? "sockets bloquantes (un thread virtuel par client)"
+                : "sockets bloquantes (un thread par client)") + "\n");
+        if (virtual && !VirtualThreads.isAvailable()) {
+            System.out.println("⚠️ Threads virtuels indisponibles sur cette JVM (Java 21+ requis) : threads plateforme utilisés");
+        }
 
+        if (blocking) {
+            acceptBlocking();
+        } else {
+            nioTransport.run();
+        }
+    }
+
+    private void acceptBlocking() {
         while (isRunning) {
             try {
                 Socket clientSocket = serverSocket.accept();
                 String clientIP = clientSocket.getInetAddress().getHostAddress();
 
-                WebSocketClientHandler handler = new WebSocketClientHandler(clientSocket, this, clientIP);
-                clients.add(handler);
-                clientExecutor.submit(handler);
-
-                System.out.println("🔗 Nouvelle connexion WebSocket de: " + clientIP);
+                BlockingConnection connection = new BlockingConnection(clientSocket, clientExecutor);
+                WebSocketClientHandler handler = new WebSocketClientHandler(connection, this, clientIP);
+                connection.setOnFailure(handler::disconnect);
+                registerClient(handler);
+                clientExecutor.submit(() -> {
+                    try {
+                        connection.readLoop(handler);
+                    } catch (Exception e) {
+                        System.err.println("Erreur dans WebSocketClientHandler: " + e.getMessage());
+                    } finally {
+                        handler.disconnect();
+                    }
+                });
             } catch (IOException e) {
                 if (isRunning) {
                     System.err.println("❌ Erreur lors de l'acceptation du client: " + e.getMessage());
@@ -85,90 +155,155 @@ public class WebSocketServer {
         }
     }
 
-    // ✅ NOUVELLE MÉTHODE : Notifier changement de contrôle
-    public void notifyControlChange(String clientId, boolean granted) {
-        for (WebSocketClientHandler client : clients) {
-            if (client.getClientId().equals(clientId)) {
-                if (granted) {
-                    client.sendMessage("CONTROL_GRANTED");
-                    System.out.println("✅ Notification contrôle accordé envoyée à: " + clientId);
-                } else {
-                    client.sendMessage("CONTROL_RELEASED");
-                    System.out.println("❌ Notification contrôle libéré envoyée à: " + clientId);
-                }
-                break;
-            }
-        }
+    void registerClient(WebSocketClientHandler handler) {
+        clients.add(handler);
+        handler.startHeartbeat();
+        System.out.println("🔗 Nouvelle connexion WebSocket de: " + handler.getClientIP());
+    }
+
+    // ── Salles ──
 
-        // Diffuser la liste des utilisateurs mise à jour
-        broadcastUserList();
+    private Session createSession(String roomId) {
+        Session session = new Session(roomId, timers, fileExecutor);
+        session.getControlQueue().setServer(this, session); // ✅ Référence pour notifications
+        session.getControlQueue().setInputEnabled(roomId.equals(inputRoomId));
+        return session;
     }
 
-    // ✅ NOUVELLE MÉTHODE : Notifier position dans la file
-    public void notifyQueuePosition(String clientId, int position) {
-        for (WebSocketClientHandler client : clients) {
-            if (client.getClientId().equals(clientId)) {
-                client.sendMessage("QUEUE_POSITION:" + position);
-                System.out.println("📍 Position " + position + " envoyée à: " + clientId);
-                break;
+    // Donne l'entrée du bureau à la salle ; le contrôleur de l'ancienne salle est libéré
+    private void setInputRoom(Session session) {
+        synchronized (inputLock) {
+            Session previous = rooms.get(inputRoomId);
+            // Salle fermée entre-temps : elle ne doit pas recevoir l'entrée
+            if (previous == session || rooms.get(session.getId()) != session) {
+                return;
             }
+            if (previous != null) {
+                previous.getControlQueue().setInputEnabled(false);
+            }
+            inputRoomId = session.getId();
+            // Le contrôleur doit voir l'écran qu'il pilote
+            session.setCaptureSubscribed(true);
+            session.getControlQueue().setInputEnabled(true);
         }
+        System.out.println("🖱️ Entrée du bureau attribuée à la salle " + session.getId());
     }
 
-    // ✅ NOUVELLE MÉTHODE : Diffuser la liste des utilisateurs connectés
-    public void broadcastUserList() {
-        List<WebSocketClientHandler> authenticatedClients = getAuthenticatedClients();
+    // Appelé à la fin de la négociation ; null si la salle est nouvelle et que la limite est atteinte
+    Session joinSession(String roomId, WebSocketClientHandler handler) {
+        return rooms.compute(roomId, (id, session) -> {
+            if (session == null) {
+                if (rooms.size() >= MAX_ROOMS) {
+                    System.out.println("❌ Salle refusée (limite de " + MAX_ROOMS + " atteinte): " + id);
+                    return null;
+                }
+                session = createSession(id);
+                System.out.println("🏠 Salle créée: " + id);
+            }
+            session.getClients().add(handler);
+            return session;
+        });
+    }
 
-        // Créer la liste JSON des utilisateurs
-        StringBuilder userListJson = new StringBuilder("[");
+    private void leaveSession(WebSocketClientHandler handler) {
+        Session session = handler.getSession();
+        if (session == null) {
+            return;
+        }
+        rooms.computeIfPresent(session.getId(), (id, current) -> {
+            current.getClients().remove(handler);
+            if (current.getClients().size() == 0 && !current.isDefault()) {
+                current.close();
+                System.out.println("🏚️ Salle fermée (vide): " + id);
+                synchronized (inputLock) {
+                    if (id.equals(inputRoomId)) {
+                        // L'entrée revient à la salle par défaut
+                        inputRoomId = Session.DEFAULT_ID;
+                        defaultSession.getControlQueue().setInputEnabled(true);
+                    }
+                }
+                return null;
+            }
+            return current;
+        });
+    }
 
-        for (int i = 0; i < authenticatedClients.size(); i++) {
-            WebSocketClientHandler client = authenticatedClients.get(i);
-            String clientId = client.getClientId();
-            String displayName = clientDisplayNames.getOrDefault(clientId, "User-" + clientId.substring(0, 4));
-            boolean hasControl = controlQueue.hasControl(clientId);
-            String clientIP = client.getClientIP();
+    // Salle d'un client connecté ; salle par défaut s'il n'a pas encore terminé la négociation
+    private Session sessionOf(String clientId) {
+        WebSocketClientHandler client = clients.get(clientId);
+        Session session = client != null ? client.getSession() : null;
+        return session != null ? session : defaultSession;
+    }
 
-            userListJson.append("{")
-                    .append("\"id\":\"").append(clientId).append("\",")
-                    .append("\"displayName\":\"").append(displayName).append("\",")
-                    .append("\"hasControl\":").append(hasControl).append(",")
-                    .append("\"ip\":\"").append(clientIP).append("\",")
-                    .append("\"status\":\"").append(hasControl ? "Contrôle" : "Spectateur").append("\"")
-                    .append("}");
+    private Session consoleRoom() {
+        return rooms.getOrDefault(consoleRoomId, defaultSession);
+    }
 
-            if (i < authenticatedClients.size() - 1) {
-                userListJson.append(",");
+    // ✅ NOUVELLE MÉTHODE : Notifier changement de contrôle
+    public void notifyControlChange(String clientId, boolean granted) {
+        WebSocketClientHandler client = clients.get(clientId);
+        if (client != null) {
+            if (granted) {
+                client.sendMessage("CONTROL_GRANTED");
+                System.out.println("✅ Notification contrôle accordé envoyée à: " + clientId);
+            } else {
+                client.sendMessage("CONTROL_RELEASED");
+                System.out.println("❌ Notification contrôle libéré envoyée à: " + clientId);
             }
         }
+        // La liste des utilisateurs est rediffusée par ControlQueue, une fois par lot de changements
+    }
 
-        userListJson.append("]");
+    // ✅ NOUVELLE MÉTHODE : Notifier position dans la file
+    public void notifyQueuePosition(String clientId, int position) {
+        WebSocketClientHandler client = clients.get(clientId);
+        if (client != null) {
+            client.sendMessage("QUEUE_POSITION:" + position);
+            System.out.println("📍 Position " + position + " envoyée à: " + clientId);
+        }
+    }
+
+    // ✅ NOUVELLE MÉTHODE : Diffuser la liste des utilisateurs connectés (membres de la salle)
+    public void broadcastUserList(Session session) {
+        List<WebSocketClientHandler> authenticatedClients = session.getClients().getAuthenticated();
 
         // Diffuser la liste à tous les clients authentifiés
-        String message = "USER_LIST:" + userListJson.toString();
-        authenticatedClients.parallelStream().forEach(client -> {
+        // Envois non bloquants (file par client) : une boucle simple suffit
+        PreparedFrame message = PreparedFrame.text("USER_LIST:" + buildUserListJson(session), TrafficClass.CHAT);
+        for (WebSocketClientHandler client : authenticatedClients) {
             try {
-                client.sendMessage(message);
+                client.sendPrepared(message);
             } catch (Exception e) {
                 // Ignorer silencieusement
             }
-        });
+        }
 
-        System.out.println("📋 Liste des utilisateurs diffusée: " + authenticatedClients.size() + " clients");
+        System.out.println("📋 Liste des utilisateurs diffusée (salle " + session.getId() + "): "
+                + authenticatedClients.size() + " clients");
     }
 
     // ✅ NOUVELLE MÉTHODE : Envoyer la liste à un client spécifique
     public void sendUserListToClient(WebSocketClientHandler client) {
-        List<WebSocketClientHandler> authenticatedClients = getAuthenticatedClients();
+        try {
+            client.sendMessage("USER_LIST:" + buildUserListJson(client.getSession()), TrafficClass.CHAT);
+        } catch (Exception e) {
+            System.err.println("Erreur envoi liste utilisateurs: " + e.getMessage());
+        }
+    }
+
+    private String buildUserListJson(Session session) {
+        List<WebSocketClientHandler> authenticatedClients = session.getClients().getAuthenticated();
+        ControlQueue controlQueue = session.getControlQueue();
 
+        // Créer la liste JSON des utilisateurs
         StringBuilder userListJson = new StringBuilder("[");
 
         for (int i = 0; i < authenticatedClients.size(); i++) {
-            WebSocketClientHandler authClient = authenticatedClients.get(i);
-            String clientId = authClient.getClientId();
-            String displayName = clientDisplayNames.getOrDefault(clientId, "User-" + clientId.substring(0, 4));
+            WebSocketClientHandler client = authenticatedClients.get(i);
+            String clientId = client.getClientId();
+            String displayName = getClientDisplayName(clientId);
             boolean hasControl = controlQueue.hasControl(clientId);
-            String clientIP = authClient.getClientIP();
+            String clientIP = client.getClientIP();
 
             userListJson.append("{")
                     .append("\"id\":\"").append(clientId).append("\",")
@@ -184,42 +319,65 @@ public class WebSocketServer {
         }
 
         userListJson.append("]");
+        return userListJson.toString();
+    }
 
-        try {
-            client.sendMessage("USER_LIST:" + userListJson.toString());
-        } catch (Exception e) {
-            System.err.println("Erreur envoi liste utilisateurs: " + e.getMessage());
-        }
+    ControlExecutor getControlExecutor() {
+        return controlExecutor;
     }
 
-    // ✅ GETTER : Pour accéder à ControlQueue
-    public ControlQueue getControlQueue() {
-        return controlQueue;
+    // Zone de l'écran actuellement diffusée (moniteur choisi ou sous-rectangle), en coordonnées absolues
+    Rectangle getCaptureRegion() {
+        return screenCapturer.getCaptureRegion();
+    }
+
+    // Voies d'entrée et de chat des clients (thread de plateforme ou virtuel selon le transport)
+    ExecutorService getClientExecutor() {
+        return clientExecutor;
+    }
+
+    ExecutorService getFileExecutor() {
+        return fileExecutor;
+    }
+
+    public ExecutorService getFrameSendExecutor() {
+        return frameSendExecutor;
+    }
+
+    public ScheduledExecutorService getFrameScheduler() {
+        return frameScheduler;
+    }
+
+    TimerWheel getTimers() {
+        return timers;
     }
 
     // Méthodes pour la gestion des fichiers
     public String startFileUpload(String clientId, String fileName, long fileSize, String fileType) {
-        String sessionId = fileTransferManager.startFileUpload(clientId, fileName, fileSize, fileType);
+        String sessionId = sessionOf(clientId).getFileTransferManager()
+                .startFileUpload(clientId, fileName, fileSize, fileType);
         if (sessionId != null) {
-            String senderName = clientDisplayNames.getOrDefault(clientId, "User-" + clientId.substring(0, 4));
+            String senderName = getClientDisplayName(clientId);
             System.out.println("📁 " + senderName + " commence l'upload de: " + fileName);
         }
         return sessionId;
     }
 
-    public boolean receiveFileChunk(String sessionId, int chunkIndex, byte[] data) {
+    public boolean receiveFileChunk(String clientId, String sessionId, int chunkIndex, byte[] data) {
+        Session room = sessionOf(clientId);
+        FileTransferManager fileTransferManager = room.getFileTransferManager();
         boolean success = fileTransferManager.receiveFileChunk(sessionId, chunkIndex, data);
         if (success) {
             FileTransferSession session = fileTransferManager.getSession(sessionId);
             if (session != null && session.isComplete()) {
-                broadcastFileAvailable(session.getFileName());
+                broadcastFileAvailable(room, session.getFileName());
             }
         }
         return success;
     }
 
     public void sendFileList(WebSocketClientHandler client) {
-        List<FileInfo> files = fileTransferManager.getAvailableFiles();
+        List<FileInfo> files = client.getSession().getFileTransferManager().getAvailableFiles();
         StringBuilder json = new StringBuilder("[");
         for (int i = 0; i < files.size(); i++) {
             json.append(files.get(i).toJson());
@@ -228,14 +386,14 @@ public class WebSocketServer {
         json.append("]");
 
         try {
-            client.sendMessage("FILE_LIST:" + json.toString());
+            client.sendMessage("FILE_LIST:" + json.toString(), TrafficClass.CHAT);
         } catch (Exception e) {
             System.err.println("Erreur envoi liste fichiers: " + e.getMessage());
         }
     }
 
     public void startFileDownload(String clientId, String fileName, WebSocketClientHandler client) {
-        FileTransferSession session = fileTransferManager.startFileDownload(clientId, fileName);
+        FileTransferSession session = client.getSession().getFileTransferManager().startFileDownload(clientId, fileName);
         if (session != null) {
             try {
                 String sessionInfo = String.format(
@@ -243,8 +401,8 @@ public class WebSocketServer {
                         session.getSessionId(), session.getFileName(),
                         session.getFileSize(), session.getTotalChunks()
                 );
-                client.sendMessage("DOWNLOAD_START:" + sessionInfo);
-                String senderName = clientDisplayNames.getOrDefault(clientId, "User-" + clientId.substring(0, 4));
+                client.sendMessage("DOWNLOAD_START:" + sessionInfo, TrafficClass.CHAT);
+                String senderName = getClientDisplayName(clientId);
                 System.out.println("📥 " + senderName + " télécharge: " + fileName);
             } catch (Exception e) {
                 System.err.println("Erreur démarrage download: " + e.getMessage());
@@ -253,29 +411,30 @@ public class WebSocketServer {
     }
 
     public void sendFileChunk(String sessionId, int chunkIndex, WebSocketClientHandler client) {
-        byte[] chunkData = fileTransferManager.readFileChunk(sessionId, chunkIndex);
+        byte[] chunkData = client.getSession().getFileTransferManager().readFileChunk(sessionId, chunkIndex);
         if (chunkData != null) {
             try {
                 String base64Data = Base64.getEncoder().encodeToString(chunkData);
                 String message = String.format("FILE_CHUNK:%s:%d:%s", sessionId, chunkIndex, base64Data);
-                client.sendMessage(message);
+                client.sendMessage(message, TrafficClass.BULK);
             } catch (Exception e) {
                 System.err.println("Erreur envoi chunk: " + e.getMessage());
             }
         }
     }
 
-    private void broadcastFileAvailable(String fileName) {
-        List<WebSocketClientHandler> authenticatedClients = getAuthenticatedClients();
-        String message = "FILE_AVAILABLE:" + fileName;
+    private void broadcastFileAvailable(Session session, String fileName) {
+        List<WebSocketClientHandler> authenticatedClients = session.getClients().getAuthenticated();
+        ChatManager chatManager = session.getChatManager();
+        PreparedFrame message = PreparedFrame.text("FILE_AVAILABLE:" + fileName, TrafficClass.CHAT);
 
-        authenticatedClients.parallelStream().forEach(client -> {
+        for (WebSocketClientHandler client : authenticatedClients) {
             try {
-                client.sendMessage(message);
+                client.sendPrepared(message);
             } catch (Exception e) {
                 // Ignorer silencieusement
             }
-        });
+        }
 
         chatManager.addSystemMessage("📁 Nouveau fichier disponible: " + fileName);
         main.java.chat.ChatMessage chatMessage = new main.java.chat.ChatMessage(
@@ -286,89 +445,206 @@ public class WebSocketServer {
 
     // Méthodes pour le chat avec noms personnalisés
     public void handleChatMessage(String senderId, String message) {
-        String senderName = clientDisplayNames.getOrDefault(senderId, "User-" + senderId.substring(0, 4));
+        String senderName = getClientDisplayName(senderId);
+        Session session = sessionOf(senderId);
+        ChatManager chatManager = session.getChatManager();
 
         chatManager.addMessage(senderId, senderName, message);
-        List<WebSocketClientHandler> authenticatedClients = getAuthenticatedClients();
+        List<WebSocketClientHandler> authenticatedClients = session.getClients().getAuthenticated();
         main.java.chat.ChatMessage chatMessage = new main.java.chat.ChatMessage(senderId, senderName, message, "text");
         chatManager.broadcastMessage(chatMessage, authenticatedClients);
     }
 
     public void sendChatHistoryToClient(WebSocketClientHandler client) {
-        chatManager.broadcastChatHistory(client);
+        client.getSession().getChatManager().broadcastChatHistory(client);
     }
 
     // ✅ MODIFICATION : Notification d'arrivée avec diffusion de liste
-    public void notifyUserJoined(String clientId, String displayName) {
-        List<WebSocketClientHandler> authenticatedClients = getAuthenticatedClients();
-        chatManager.notifyUserJoined(displayName, authenticatedClients);
+    public void notifyUserJoined(Session session, String clientId, String displayName) {
+        List<WebSocketClientHandler> authenticatedClients = session.getClients().getAuthenticated();
+        session.getChatManager().notifyUserJoined(displayName, authenticatedClients);
 
         // ✅ NOUVEAU : Diffuser la liste mise à jour
-        broadcastUserList();
+        broadcastUserList(session);
     }
 
     // ✅ MODIFICATION : Notification de départ avec diffusion de liste
-    public void notifyUserLeft(String clientId) {
-        String displayName = clientDisplayNames.getOrDefault(clientId, "User-" + clientId.substring(0, 4));
-        List<WebSocketClientHandler> authenticatedClients = getAuthenticatedClients();
-        chatManager.notifyUserLeft(displayName, authenticatedClients);
-        clientDisplayNames.remove(clientId);
+    public void notifyUserLeft(Session session, String clientId) {
+        String displayName = getClientDisplayName(clientId);
+        List<WebSocketClientHandler> authenticatedClients = session.getClients().getAuthenticated();
+        session.getChatManager().notifyUserLeft(displayName, authenticatedClients);
+        members.remove(clientId);
 
         // ✅ NOUVEAU : Diffuser la liste mise à jour
-        broadcastUserList();
+        broadcastUserList(session);
     }
 
     private void startScreenCapture() {
-        System.out.println("📹 Capture optimisée démarrée...");
+        System.out.println("📹 Capture optimisée démarrée (pipeline capture → redimensionnement → encodage → envoi)...");
+
+        capturePipeline = new CapturePipeline(screenCapturer, new CapturePipeline.FrameListener() {
+            @Override
+            public FrameDemand getDemand() {
+                FrameDemand demand = new FrameDemand();
+                for (WebSocketClientHandler client : getViewers()) {
+                    if (client.supportsTileUpdates()) {
+                        demand.addTiles(client.getCaptureProfile(), client.needsKeyframe());
+                    } else {
+                        demand.addFullFrame(client.getCaptureProfile(), client.getFrameCodec(), client.getQualityLevel(),
+                                client.needsKeyframe());
+                    }
+                }
+                return demand;
+            }
 
-        screenCaptureExecutor.scheduleAtFixedRate(() -> {
-            try {
-                List<WebSocketClientHandler> authenticatedClients = getAuthenticatedClients();
+            @Override
+            public void onFrame(Map<CaptureProfile, CapturedFrame> frames) {
+                publishFrames(frames);
+            }
+        });
+        capturePipeline.start();
+    }
+
+    // Étage d'envoi : appelé sur le thread dédié du pipeline
+    private void publishFrames(Map<CaptureProfile, CapturedFrame> frames) {
+        Map<CaptureProfile, List<WebSocketClientHandler>> byProfile = new EnumMap<>(CaptureProfile.class);
+        for (WebSocketClientHandler client : getViewers()) {
+            byProfile.computeIfAbsent(client.getCaptureProfile(), p -> new ArrayList<>()).add(client);
+        }
 
-                if (!authenticatedClients.isEmpty()) {
-                    long currentTime = System.currentTimeMillis();
+        // Verrou partagé avec sendLatestTierFrame : une image plus ancienne ne passe jamais après celle-ci
+        synchronized (publishLock) {
+            latestFrames = frames;
+            boolean sent = false;
+            long frameId = frameCounter.get() + 1;
 
-                    if (currentTime - lastBroadcastTime < MIN_BROADCAST_INTERVAL) {
-                        return;
-                    }
+            for (Map.Entry<CaptureProfile, List<WebSocketClientHandler>> entry : byProfile.entrySet()) {
+                CapturedFrame frame = frames.get(entry.getKey());
+                if (frame != null) {
+                    sent |= publishFrame(frame, frameId, entry.getValue());
+                }
+            }
 
-                    synchronized (screenDataLock) {
-                        byte[] screenData = screenCapturer.captureScreen();
+            if (sent) {
+                frameCounter.incrementAndGet();
+            }
+        }
+    }
 
-                        if (screenData != null && !Arrays.equals(screenData, lastScreenData)) {
-                            lastScreenData = screenData.clone();
-                            long frameId = frameCounter.incrementAndGet();
+    /**
+     * Changement de palier : envoie au client la dernière image déjà encodée
+     * pour ce palier (celle que reçoivent ses autres abonnés), sans forcer de
+     * nouvel encodage. Retourne false si le palier n'a pas d'image récente
+     * (aucun abonné jusqu'ici) ou si le client est en mode tuiles.
+     */
+    boolean sendLatestTierFrame(WebSocketClientHandler client, StreamTier tier) {
+        if (client.supportsTileUpdates()) {
+            return false;
+        }
+        synchronized (publishLock) {
+            CapturedFrame frame = latestFrames.get(tier.getProfile());
+            String codec = client.supportsBinaryFrames() ? client.getFrameCodec() : FrameCodecs.DEFAULT;
+            byte[] screenData = frame != null ? frame.getFullFrame(codec, tier.getQuality()) : null;
+            if (screenData == null) {
+                return false;
+            }
+            broadcastScreenDataFast(screenData, frameCounter.get(), FrameCodecs.idOf(codec), frame.getWidth(),
+                    frame.getHeight(), List.of(client));
+            return true;
+        }
+    }
 
-                            broadcastScreenDataFast(screenData, frameId, authenticatedClients);
-                            lastBroadcastTime = currentTime;
-                        }
-                    }
+    private boolean publishFrame(CapturedFrame frame, long frameId, List<WebSocketClientHandler> profileClients) {
+        List<WebSocketClientHandler> fullFrameClients = new ArrayList<>();
+        List<WebSocketClientHandler> tileClients = new ArrayList<>();
+        for (WebSocketClientHandler client : profileClients) {
+            if (client.supportsTileUpdates()) {
+                tileClients.add(client);
+            } else if (frame.isFullFrameChanged() || client.needsKeyframe()) {
+                // Écran inchangé : seuls les clients qui n'ont pas encore d'image la reçoivent
+                fullFrameClients.add(client);
+            }
+        }
+
+        boolean sent = false;
+
+        if (!fullFrameClients.isEmpty()) {
+            // Un groupe par codec et niveau de qualité : chaque encodage est partagé par son groupe
+            Map<String, List<WebSocketClientHandler>> byFormat = new HashMap<>();
+            for (WebSocketClientHandler client : fullFrameClients) {
+                QualityLevel quality = FrameCodecs.isLossless(client.getFrameCodec())
+                        ? QualityLevel.MEDIUM : client.getQualityLevel();
+                byFormat.computeIfAbsent(client.getFrameCodec() + ":" + quality, f -> new ArrayList<>()).add(client);
+            }
+            for (List<WebSocketClientHandler> group : byFormat.values()) {
+                String codec = group.get(0).getFrameCodec();
+                byte[] screenData = frame.getFullFrame(codec, group.get(0).getQualityLevel());
+                if (screenData == null) {
+                    // Réglage changé entre l'encodage et l'envoi : repli sur le JPEG de référence
+                    codec = FrameCodecs.DEFAULT;
+                    screenData = frame.getFullFrame();
                 }
-            } catch (Exception e) {
-                // Ignorer les erreurs
+                broadcastScreenDataFast(screenData, frameId, FrameCodecs.idOf(codec), frame.getWidth(),
+                        frame.getHeight(), group);
             }
-        }, 0, MIN_BROADCAST_INTERVAL, TimeUnit.MILLISECONDS);
+            sent = true;
+        }
+
+        if (frame.getTileUpdate() != null && !tileClients.isEmpty()) {
+            broadcastTileUpdate(frame, frameId, tileClients);
+            sent = true;
+        }
+
+        return sent;
     }
 
-    public void broadcastScreenDataFast(byte[] screenData, long frameId, List<WebSocketClientHandler> targetClients) {
+    public void broadcastScreenDataFast(byte[] screenData, long frameId, byte codecId, int width, int height,
+                                        List<WebSocketClientHandler> targetClients) {
         if (screenData == null || targetClients.isEmpty()) return;
 
-        String base64Image = Base64.getEncoder().encodeToString(screenData);
-        String message = "SCREEN_DATA:" + frameId + ":" + base64Image;
-
-        targetClients.parallelStream().forEach(client -> {
-            try {
-                client.sendMessageFast(message);
-            } catch (Exception e) {
-                // Ignorer silencieusement
+        boolean anyBinary = false;
+        boolean anyText = false;
+        for (WebSocketClientHandler client : targetClients) {
+            if (client.supportsBinaryFrames()) {
+                anyBinary = true;
+            } else {
+                anyText = true;
             }
-        });
+        }
+
+        // Chaque représentation n'est encodée qu'une fois, puis partagée par tous les clients
+        final PreparedFrame binaryFrame = anyBinary
+                ? ScreenFrameProtocol.prepareFrame(ScreenFrameProtocol.TYPE_FULL_FRAME,
+                        codecId, frameId, width, height, screenData)
+                : null;
+        final PreparedFrame textFrame = anyText
+                ? PreparedFrame.text(("SCREEN_DATA:" + frameId + ":").getBytes(java.nio.charset.StandardCharsets.US_ASCII),
+                        Base64.getEncoder().encode(screenData), TrafficClass.SCREEN)
+                : null;
+
+        for (WebSocketClientHandler client : targetClients) {
+            client.offerFrame(client.supportsBinaryFrames() ? binaryFrame : textFrame, true, false, width, height);
+        }
     }
 
-    private void startHeartbeatService() {
-        heartbeatExecutor.scheduleAtFixedRate(() -> {
-            clients.removeIf(client -> !client.isConnected());
-        }, 30, 30, TimeUnit.SECONDS);
+    // Clients en mode tuiles : image clé complète ou seulement les tuiles modifiées
+    private void broadcastTileUpdate(CapturedFrame frame, long frameId, List<WebSocketClientHandler> tileClients) {
+        TileUpdate update = frame.getTileUpdate();
+        final PreparedFrame prepared;
+        if (update.isKeyframe()) {
+            prepared = ScreenFrameProtocol.prepareFrame(ScreenFrameProtocol.TYPE_FULL_FRAME,
+                    ScreenFrameProtocol.CODEC_JPEG, frameId, frame.getWidth(), frame.getHeight(), frame.getFullFrame());
+        } else {
+            prepared = ScreenFrameProtocol.prepareTileFrame(frameId, frame.getWidth(), frame.getHeight(), update);
+        }
+
+        for (WebSocketClientHandler client : tileClients) {
+            if (update.isKeyframe()) {
+                client.offerFrame(prepared, true, false, frame.getWidth(), frame.getHeight());
+            } else {
+                client.offerTileUpdate(prepared, update, frameId, frame.getWidth(), frame.getHeight());
+            }
+        }
     }
 
     private void startConsoleHandler() {
@@ -390,7 +666,9 @@ public class WebSocketServer {
     public void endClientSession(String clientId, WebSocketClientHandler clientHandler) {
         AuthenticationManager.AuthenticatedClient client = authManager.getAuthenticatedClient(clientId);
         if (client != null) {
-            String displayName = clientDisplayNames.getOrDefault(clientId, "User-" + clientId.substring(0, 4));
+            String displayName = getClientDisplayName(clientId);
+            Session session = clientHandler.getSession();
+            ControlQueue controlQueue = session.getControlQueue();
 
             // ✅ CORRECTION : Libérer le contrôle avant la fermeture
             if (controlQueue.hasControl(clientId)) {
@@ -411,10 +689,11 @@ public class WebSocketServer {
 
             // ✅ CORRECTION : Nettoyer d'abord, déconnecter ensuite
             authManager.removeClient(clientId);
-            clientDisplayNames.remove(clientId);
+            clients.markUnauthenticated(clientId);
+            session.getClients().markUnauthenticated(clientId);
 
             // Notifier les autres clients AVANT la déconnexion
-            notifyUserLeft(clientId);
+            notifyUserLeft(session, clientId);
 
             // Déconnecter le client en dernier
             clientHandler.disconnect();
@@ -469,14 +748,7 @@ public class WebSocketServer {
             case "closesession":
                 if (parts.length > 1) {
                     String clientId = parts[1];
-                    WebSocketClientHandler targetClient = null;
-
-                    for (WebSocketClientHandler client : clients) {
-                        if (client.getClientId().equals(clientId)) {
-                            targetClient = client;
-                            break;
-                        }
-                    }
+                    WebSocketClientHandler targetClient = clients.get(clientId);
 
                     if (targetClient != null) {
                         boolean closed = authManager.closeClientSession(clientId, targetClient);
@@ -494,11 +766,20 @@ public class WebSocketServer {
                 break;
             // ✅ NOUVELLES COMMANDES : Gestion de la concurrence
             case "status":
-                controlQueue.printConcurrencyStatus();
+                System.out.println("🏠 Salle " + consoleRoomId + " (" + rooms.size() + " salle(s) active(s))");
+                consoleRoom().getControlQueue().printConcurrencyStatus();
+                if (capturePipeline != null) {
+                    System.out.println("📹 Pipeline capture: " + capturePipeline.getCapturedFrames() + " capturées, "
+                            + capturePipeline.getUnchangedFrames() + " inchangées, "
+                            + capturePipeline.getDroppedFrames() + " abandonnées, "
+                            + capturePipeline.getSentFrames() + " envoyées");
+                }
+                System.out.println("📤 Attente en file d'émission: " + OutboundQueue.describeQueueingDelays());
+                System.out.println("🖱️ Déplacements fusionnés: " + controlExecutor.getCoalescedMoves());
                 break;
             case "forcerelease":
                 String adminId = "admin";
-                boolean released = controlQueue.forceRelease(adminId);
+                boolean released = consoleRoom().getControlQueue().forceRelease(adminId);
                 if (released) {
                     System.out.println("✅ Contrôle libéré de force");
                 } else {
@@ -506,39 +787,50 @@ public class WebSocketServer {
                 }
                 break;
             case "queue":
-                String[] waiting = controlQueue.getWaitingClients();
+                String[] waiting = consoleRoom().getControlQueue().getWaitingClients();
                 System.out.println("📋 File d'attente (" + waiting.length + " clients):");
                 for (int i = 0; i < waiting.length; i++) {
-                    String displayName = clientDisplayNames.getOrDefault(waiting[i], waiting[i]);
+                    Client member = members.get(waiting[i]);
+                    String displayName = member != null ? member.getDisplayName() : waiting[i];
                     System.out.println("   " + (i+1) + ". " + displayName + " (" + waiting[i] + ")");
                 }
                 break;
             case "chat":
                 if (parts.length > 1) {
                     String adminMessage = String.join(" ", Arrays.copyOfRange(parts, 1, parts.length));
+                    ChatManager chatManager = consoleRoom().getChatManager();
                     chatManager.addSystemMessage("Admin: " + adminMessage);
-                    List<WebSocketClientHandler> clients = getAuthenticatedClients();
+                    List<WebSocketClientHandler> clients = consoleRoom().getClients().getAuthenticated();
                     main.java.chat.ChatMessage msg = new main.java.chat.ChatMessage("admin", "Admin", adminMessage, "system");
                     chatManager.broadcastMessage(msg, clients);
                 }
                 break;
             case "clearchat":
-                chatManager.clearHistory();
+                consoleRoom().getChatManager().clearHistory();
+                break;
+            case "source":
+                handleSourceCommand(parts);
                 break;
             case "files":
                 listAvailableFiles();
                 break;
             case "clearfiles":
-                fileTransferManager.clearAllFiles();
+                consoleRoom().getFileTransferManager().clearAllFiles();
                 System.out.println("🗑️ Tous les fichiers ont été supprimés");
                 break;
             case "users":
                 listConnectedUsers();
                 break;
             case "refreshusers":
-                broadcastUserList();
+                broadcastUserList(consoleRoom());
                 System.out.println("🔄 Liste des utilisateurs diffusée manuellement");
                 break;
+            case "rooms":
+                listRooms();
+                break;
+            case "room":
+                handleRoomCommand(parts);
+                break;
             case "stop":
                 stop();
                 break;
@@ -550,8 +842,90 @@ public class WebSocketServer {
         }
     }
 
+    // source [list | monitor <n> | region <x> <y> <w> <h> | reset]
+    private void handleSourceCommand(String[] parts) {
+        String action = parts.length > 1 ? parts[1].toLowerCase() : "list";
+        try {
+            switch (action) {
+                case "monitor":
+                    if (parts.length > 2 && screenCapturer.selectMonitor(Integer.parseInt(parts[2]))) {
+                        System.out.println("🖥️ Capture du moniteur " + parts[2] + ": " + screenCapturer.getCaptureRegion());
+                    } else {
+                        System.out.println("❌ Moniteur invalide. Usage: source monitor <n>");
+                    }
+                    break;
+                case "region":
+                    if (parts.length > 5 && screenCapturer.setCaptureRegion(new Rectangle(
+                            Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+                            Integer.parseInt(parts[4]), Integer.parseInt(parts[5])))) {
+                        System.out.println("✂️ Capture de la région: " + screenCapturer.getCaptureRegion());
+                    } else {
+                        System.out.println("❌ Région invalide. Usage: source region <x> <y> <largeur> <hauteur>");
+                    }
+                    break;
+                case "reset":
+                    screenCapturer.resetCaptureRegion();
+                    System.out.println("🖥️ Capture de l'écran principal: " + screenCapturer.getCaptureRegion());
+                    break;
+                default:
+                    java.awt.Rectangle[] monitors = ScreenCapturer.getMonitorBounds();
+                    System.out.println("🖥️ Moniteurs disponibles:");
+                    for (int i = 0; i < monitors.length; i++) {
+                        System.out.println("   " + i + ". " + monitors[i].width + "x" + monitors[i].height
+                                + " @ " + monitors[i].x + "," + monitors[i].y);
+                    }
+                    System.out.println("   Région actuelle: " + screenCapturer.getCaptureRegion());
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("❌ Valeur numérique invalide");
+        }
+    }
+
+    // room <id> : salle visée par la console ; capture on|off : abonnement au flux d'écran ;
+    // input : la salle devient celle qui pilote le bureau
+    private void handleRoomCommand(String[] parts) {
+        if (parts.length < 2) {
+            System.out.println("Usage: room <id> [capture on|off | input]");
+            return;
+        }
+        Session session = rooms.get(parts[1]);
+        if (session == null) {
+            System.out.println("❌ Salle inconnue: " + parts[1]);
+            return;
+        }
+        if (parts.length >= 3 && parts[2].equals("input")) {
+            setInputRoom(session);
+            return;
+        }
+        if (parts.length >= 4 && parts[2].equals("capture")) {
+            if (parts[3].equals("off") && session.getId().equals(inputRoomId)) {
+                System.out.println("❌ La salle " + session.getId() + " pilote le bureau : flux d'écran obligatoire");
+                return;
+            }
+            session.setCaptureSubscribed(parts[3].equals("on"));
+            System.out.println("📹 Flux d'écran " + (session.isCaptureSubscribed() ? "activé" : "coupé")
+                    + " pour la salle " + session.getId());
+            return;
+        }
+        consoleRoomId = session.getId();
+        System.out.println("🏠 Commandes de la console dirigées vers la salle " + consoleRoomId);
+    }
+
+    private void listRooms() {
+        System.out.println("\n🏠 SALLES ACTIVES");
+        System.out.println("═══════════════════════════");
+        for (Session session : rooms.values()) {
+            String controller = session.getControlQueue().getCurrentController();
+            System.out.println((session.getId().equals(consoleRoomId) ? "▶ " : "  ") + session.getId()
+                    + " - " + session.getClients().getAuthenticated().size() + " utilisateur(s)"
+                    + ", contrôle: " + (controller != null ? getClientDisplayName(controller) : "libre")
+                    + ", flux: " + (session.isCaptureSubscribed() ? "oui" : "non")
+                    + (session.getId().equals(inputRoomId) ? ", 🖱️ entrée du bureau" : ""));
+        }
+    }
+
     private void listAvailableFiles() {
-        List<FileInfo> files = fileTransferManager.getAvailableFiles();
+        List<FileInfo> files = consoleRoom().getFileTransferManager().getAvailableFiles();
         System.out.println("\n📁 FICHIERS DISPONIBLES");
         System.out.println("═══════════════════════════");
 
@@ -575,16 +949,17 @@ public class WebSocketServer {
 
     // ✅ AMÉLIORATION : Liste des utilisateurs avec plus de détails
     private void listConnectedUsers() {
-        System.out.println("\n👥 UTILISATEURS CONNECTÉS");
+        System.out.println("\n👥 UTILISATEURS CONNECTÉS (salle " + consoleRoomId + ")");
         System.out.println("═══════════════════════════");
 
-        List<WebSocketClientHandler> authenticatedClients = getAuthenticatedClients();
+        ControlQueue controlQueue = consoleRoom().getControlQueue();
+        List<WebSocketClientHandler> authenticatedClients = consoleRoom().getClients().getAuthenticated();
         if (authenticatedClients.isEmpty()) {
             System.out.println("Aucun utilisateur connecté");
         } else {
             for (WebSocketClientHandler client : authenticatedClients) {
                 String clientId = client.getClientId();
-                String displayName = clientDisplayNames.getOrDefault(clientId, "User-" + clientId.substring(0, 4));
+                String displayName = getClientDisplayName(clientId);
                 String controlStatus = controlQueue.hasControl(clientId) ? "🎮 Contrôle" : "👀 Spectateur";
                 String password = authManager.getClientPassword(clientId);
 
@@ -592,6 +967,11 @@ public class WebSocketServer {
                 System.out.println("   ID: " + clientId);
                 System.out.println("   IP: " + client.getClientIP());
                 System.out.println("   Rôle: " + controlStatus);
+                AdaptiveStreamController stream = client.getStreamController();
+                StreamTier tier = client.getStreamTier();
+                System.out.println("   📶 Flux: " + stream.getTargetFps() + " FPS, qualité " + client.getQualityLevel()
+                        + (tier != null ? ", palier " + tier.getName() : "")
+                        + String.format(", écriture %.1f ms", stream.getAverageWriteMillis()));
                 System.out.println("   🔑 Mot de passe: " + (password != null ? password : "N/A"));
 
                 if (controlQueue.hasControl(clientId)) {
@@ -624,8 +1004,12 @@ public class WebSocketServer {
         System.out.println("status            - Afficher l'état de la concurrence"); // ✅ NOUVEAU
         System.out.println("forcerelease      - Libérer le contrôle de force"); // ✅ NOUVEAU
         System.out.println("queue             - Voir la file d'attente"); // ✅ NOUVEAU
+        System.out.println("source [...]      - Choisir la source (list, monitor <n>, region x y w h, reset)");
         System.out.println("chat <message>    - Envoyer un message admin");
         System.out.println("clearchat         - Effacer l'historique du chat");
+        System.out.println("rooms             - Lister les salles actives");
+        System.out.println("room <id> [...]   - Choisir la salle de la console (capture on|off : flux d'écran,");
+        System.out.println("                    input : la salle pilote le bureau, une seule à la fois)");
         System.out.println("files             - Lister les fichiers disponibles");
         System.out.println("clearfiles        - Supprimer tous les fichiers");
         System.out.println("users             - Lister les utilisateurs connectés");
@@ -659,10 +1043,21 @@ public class WebSocketServer {
         System.out.println("╚══════════════════════════════════════════╝");
     }
 
-    private List<WebSocketClientHandler> getAuthenticatedClients() {
-        return clients.stream()
-                .filter(client -> authManager.isAuthenticated(client.getClientId()))
-                .collect(Collectors.toList());
+    // Clients authentifiés des salles abonnées au flux d'écran ; une seule salle : instantané sans allocation
+    private List<WebSocketClientHandler> getViewers() {
+        if (rooms.size() == 1) {
+            Session session = rooms.get(Session.DEFAULT_ID);
+            if (session != null) {
+                return session.isCaptureSubscribed() ? session.getClients().getAuthenticated() : List.of();
+            }
+        }
+        List<WebSocketClientHandler> viewers = new ArrayList<>();
+        for (Session session : rooms.values()) {
+            if (session.isCaptureSubscribed()) {
+                viewers.addAll(session.getClients().getAuthenticated());
+            }
+        }
+        return viewers;
     }
 
     public String requestConnection(String clientIP, WebSocketClientHandler handler) {
@@ -675,49 +1070,39 @@ public class WebSocketServer {
 
     // ✅ MODIFICATION : Authentification avec diffusion de liste
     public void authenticateClient(String clientId, String clientIP, String displayName) {
+        Session session = sessionOf(clientId);
         authManager.addAuthenticatedClient(clientId, clientIP);
-        clientDisplayNames.put(clientId, displayName);
+        clients.markAuthenticated(clientId);
+        session.getClients().markAuthenticated(clientId);
+        members.put(clientId, new Client(clientId, displayName, session));
 
         // ✅ NOUVEAU : Enregistrer le nom dans ControlQueue
-        controlQueue.setClientName(clientId, displayName);
+        session.getControlQueue().setClientName(clientId, displayName);
 
-        for (WebSocketClientHandler client : clients) {
-            if (client.getClientId().equals(clientId)) {
-                sendChatHistoryToClient(client);
-                sendUserListToClient(client);
-                break;
-            }
+        WebSocketClientHandler client = clients.get(clientId);
+        if (client != null) {
+            sendChatHistoryToClient(client);
+            sendUserListToClient(client);
         }
 
-        notifyUserJoined(clientId, displayName);
+        notifyUserJoined(session, clientId, displayName);
     }
 
     public void authenticateClient(String clientId, String clientIP) {
         authenticateClient(clientId, clientIP, "User-" + clientId.substring(0, 4));
     }
 
-    // ✅ MODIFICATION : Contrôle avec diffusion de liste
+    // La liste des utilisateurs est rediffusée par la ControlQueue à chaque changement de contrôleur
     public boolean requestControl(String clientId) {
-        boolean granted = controlQueue.requestControl(clientId);
-
-        // ✅ NOUVEAU : Diffuser la liste mise à jour quand le contrôle change
-        if (granted) {
-            broadcastUserList();
-        }
-
-        return granted;
+        return sessionOf(clientId).getControlQueue().requestControl(clientId);
     }
 
-    // ✅ MODIFICATION : Libération de contrôle avec diffusion de liste
     public void releaseControl(String clientId) {
-        controlQueue.releaseControl(clientId);
-
-        // ✅ NOUVEAU : Diffuser la liste mise à jour
-        broadcastUserList();
+        sessionOf(clientId).getControlQueue().releaseControl(clientId);
     }
 
     public boolean hasControl(String clientId) {
-        return controlQueue.hasControl(clientId);
+        return sessionOf(clientId).getControlQueue().hasControl(clientId);
     }
 
     // ✅ MODIFICATION : Suppression de client avec diffusion de liste
@@ -725,54 +1110,71 @@ public class WebSocketServer {
         String clientId = client.getClientId();
 
         // ✅ CORRECTION : Vérifier si le client existe avant suppression
-        if (clients.contains(client)) {
-            clients.remove(client);
+        if (clients.remove(client)) {
+            Session session = client.getSession();
+            // Pas de salle : la connexion n'a pas terminé sa négociation
+            if (session != null) {
+                ControlQueue controlQueue = session.getControlQueue();
+                // Libérer le contrôle si nécessaire
+                if (controlQueue.hasControl(clientId)) {
+                    controlQueue.releaseControl(clientId);
+                }
 
-            // Libérer le contrôle si nécessaire
-            if (controlQueue.hasControl(clientId)) {
-                controlQueue.releaseControl(clientId);
-            }
+                // Nettoyer l'authentification
+                if (authManager.isAuthenticated(clientId)) {
+                    authManager.removeClient(clientId);
+                    session.getClients().markUnauthenticated(clientId);
+                    // Notifier le départ et diffuser la liste mise à jour
+                    notifyUserLeft(session, clientId);
+                }
 
-            // Nettoyer l'authentification
-            if (authManager.isAuthenticated(clientId)) {
-                authManager.removeClient(clientId);
-                // Notifier le départ et diffuser la liste mise à jour
-                notifyUserLeft(clientId);
+                controlQueue.removeClient(clientId);
+                leaveSession(client);
             }
-
-            controlQueue.removeClient(clientId);
+            members.remove(clientId);
 
             System.out.println("🔌 Client supprimé: " + clientId);
         }
     }
 
     public String getClientDisplayName(String clientId) {
-        return clientDisplayNames.getOrDefault(clientId, "User-" + clientId.substring(0, 4));
+        Client member = members.get(clientId);
+        return member != null ? member.getDisplayName() : "User-" + clientId.substring(0, 4);
     }
 
     public void updateClientDisplayName(String clientId, String newDisplayName) {
-        if (clientDisplayNames.containsKey(clientId)) {
-            String oldName = clientDisplayNames.get(clientId);
-            clientDisplayNames.put(clientId, newDisplayName);
+        Client member = members.get(clientId);
+        if (member != null) {
+            String oldName = member.getDisplayName();
+            member.setDisplayName(newDisplayName);
 
+            Session session = member.getSession();
+            ChatManager chatManager = session.getChatManager();
             chatManager.addSystemMessage(oldName + " a changé son nom en " + newDisplayName);
-            List<WebSocketClientHandler> clients = getAuthenticatedClients();
+            List<WebSocketClientHandler> clients = session.getClients().getAuthenticated();
             main.java.chat.ChatMessage msg = new main.java.chat.ChatMessage("system", "Système",
                     oldName + " a changé son nom en " + newDisplayName, "system");
             chatManager.broadcastMessage(msg, clients);
 
             // ✅ NOUVEAU : Diffuser la liste mise à jour après changement de nom
-            broadcastUserList();
+            broadcastUserList(session);
         }
     }
 
     public void stop() {
         isRunning = false;
 
-        screenCaptureExecutor.shutdown();
-        heartbeatExecutor.shutdown();
+        if (capturePipeline != null) capturePipeline.stop();
         clientExecutor.shutdown();
-        controlQueue.shutdown();
+        frameSendExecutor.shutdown();
+        fileExecutor.shutdown();
+        frameScheduler.shutdown();
+        for (Session session : rooms.values()) {
+            session.close();
+        }
+        controlExecutor.shutdown();
+        timers.shutdown();
+        if (nioTransport != null) nioTransport.stop();
 
         try {
             if (serverSocket != null) serverSocket.close();
@@ -0,0 +1,223 @@
+package main.java.utils;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Roue temporelle hachée (hashed timer wheel) partagée par tout le serveur.
+ *
+ * Les échéances sont rangées dans un tableau circulaire d'emplacements d'une
+ * durée tickMillis ; une échéance plus lointaine qu'un tour de roue attend
+ * le nombre de tours nécessaire. Programmer et annuler coûtent O(1) quel que
+ * soit le nombre d'échéances en cours : l'appelant ne fait que déposer la
+ * demande dans une file, un seul thread ("rc-timers") range les échéances et
+ * exécute celles qui sont arrivées.
+ *
+ * La précision est d'un tick : une tâche n'est jamais exécutée en avance,
+ * au plus un tick en retard. Les tâches s'exécutent sur le thread de la roue
+ * et doivent rester courtes (vérifier un horodatage, notifier, fermer).
+ */
+public final class TimerWheel {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    // Échéances rangées au plus par tick : une rafale de programmations ne bloque pas l'expiration
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    /** Échéance programmée, annulable. */
+    public static final class Timeout {
+        private final TimerWheel wheel;
+        private final Runnable task;
+        private final long deadline; // nanosecondes depuis le démarrage de la roue
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        // Réservés au thread de la roue
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        // false si la tâche a déjà été exécutée ou annulée
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    // Liste doublement chaînée : retrait O(1) d'une échéance annulée
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+
+        void expire(Queue<Timeout> expired) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                if (timeout.remainingRounds <= 0) {
+                    Timeout next = remove(timeout);
+                    expired.add(timeout);
+                    timeout = next;
+                } else {
+                    timeout.remainingRounds--;
+                    timeout = timeout.next;
+                }
+            }
+        }
+    }
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick = 0; // thread de la roue
+
+    // slots est arrondi à la puissance de deux supérieure
+    public TimerWheel(String name, long tickMillis, int slots) {
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Exécute la tâche dans delayMillis (au plus un tick plus tard)
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        Timeout timeout = new Timeout(this, task, deadline);
+        if (running) {
+            added.add(timeout);
+        }
+        return timeout;
+    }
+
+    private void run() {
+        Queue<Timeout> expired = new ArrayDeque<>();
+        while (running) {
+            // Le tick n est traité une fois sa fin atteinte : jamais d'expiration en avance
+            long tickEnd = (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = tickEnd - (System.nanoTime() - startTime)) > 0) {
+                LockSupport.parkNanos(this, sleep);
+                if (!running) {
+                    return;
+                }
+            }
+
+            removeCancelled();
+            transferAdded();
+            wheel[(int) (tick & mask)].expire(expired);
+            tick++;
+
+            Timeout timeout;
+            while ((timeout = expired.poll()) != null) {
+                if (timeout.state.compareAndSet(PENDING, EXPIRED)) {
+                    try {
+                        timeout.task.run();
+                    } catch (Throwable t) {
+                        System.err.println("❌ Erreur dans une tâche de " + name + ": " + t);
+                    }
+                }
+            }
+        }
+    }
+
+    private void transferAdded() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = added.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() != PENDING) {
+                continue;
+            }
+            long deadlineTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = Math.max(0, (deadlineTick - tick) / wheel.length);
+            // Échéance déjà passée : traitée dès ce tick
+            long slot = Math.max(deadlineTick, tick);
+            wheel[(int) (slot & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    // Les échéances en cours sont abandonnées sans être exécutées
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
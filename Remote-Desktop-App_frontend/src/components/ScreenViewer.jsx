@@ -45,7 +45,9 @@ const ScreenViewer = ({ screenData, hasControl }) => {
     const lastFrameIdRef = useRef(-1);
     const lastRenderTimeRef = useRef(0);
     const isRenderingRef = useRef(false);
-    const RENDER_THROTTLE = 200;
+    // Zone du canvas où la dernière image est dessinée et dimensions réelles de cette image
+    const drawnFrameRef = useRef(null);
+    const RENDER_THROTTLE = 33;
 
     const socketService = SocketService.getInstance();
 
@@ -114,6 +116,14 @@ const ScreenViewer = ({ screenData, hasControl }) => {
                 ctx.imageSmoothingEnabled = true;
                 ctx.imageSmoothingQuality = 'high';
                 ctx.drawImage(img, x, y, drawWidth, drawHeight);
+                drawnFrameRef.current = {
+                    x: x,
+                    y: y,
+                    width: drawWidth,
+                    height: drawHeight,
+                    frameWidth: data.width || img.naturalWidth,
+                    frameHeight: data.height || img.naturalHeight
+                };
                 
                 setImageLoaded(true);
                 
@@ -150,17 +160,19 @@ const ScreenViewer = ({ screenData, hasControl }) => {
         const clientX = event.touches ? event.touches[0].clientX : event.clientX;
         const clientY = event.touches ? event.touches[0].clientY : event.clientY;
         
-        const canvasX = clientX - rect.left;
-        const canvasY = clientY - rect.top;
+        // Position dans le repère du canvas (sa taille affichée peut différer de sa résolution)
+        const canvasX = (clientX - rect.left) * canvas.width / rect.width;
+        const canvasY = (clientY - rect.top) * canvas.height / rect.height;
         
-        const scaleX = 1280 / rect.width;
-        const scaleY = 720 / rect.height;
+        const drawn = drawnFrameRef.current;
+        if (!drawn) return { x: 0, y: 0 };
         
-        const finalX = Math.round(canvasX * scaleX);
-        const finalY = Math.round(canvasY * scaleY);
+        // Pixels de l'image reçue, bandes noires exclues : le serveur les ramène à la zone capturée
+        const frameX = Math.round((canvasX - drawn.x) * drawn.frameWidth / drawn.width);
+        const frameY = Math.round((canvasY - drawn.y) * drawn.frameHeight / drawn.height);
         
-        const clampedX = Math.max(0, Math.min(1280, finalX));
-        const clampedY = Math.max(0, Math.min(720, finalY));
+        const clampedX = Math.max(0, Math.min(drawn.frameWidth - 1, frameX));
+        const clampedY = Math.max(0, Math.min(drawn.frameHeight - 1, frameY));
         
         return { x: clampedX, y: clampedY };
     }, []);
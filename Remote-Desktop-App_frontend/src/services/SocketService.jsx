@@ -1,3 +1,16 @@
+// Événements d'entrée au format binaire (protocole rc-binary.v1)
+const INPUT_EVENT_OPCODE = 0x01;
+const INPUT_EVENT_TYPES = {
+    MOUSE_MOVE: 1,
+    MOUSE_CLICK: 2,
+    MOUSE_PRESS: 3,
+    MOUSE_RELEASE: 4,
+    KEY_PRESS: 5,
+    KEY_RELEASE: 6,
+    KEY_TYPE: 7,
+    MOUSE_WHEEL: 8
+};
+
 class SocketService {
     constructor() {
         this.socket = null;
@@ -8,9 +21,10 @@ class SocketService {
         this.lastFrameId = -1;
         this.frameSkipCounter = 0;
         this.lastRenderTime = 0;
-        this.MIN_RENDER_INTERVAL = 150;
+        this.MIN_RENDER_INTERVAL = 33; // la cadence est adaptée par le serveur
         this.displayName = '';
         this.generatedPassword = null;
+        this.lastObjectUrl = null;
     }
 
     static getInstance() {
@@ -26,7 +40,13 @@ class SocketService {
                 this.socket.close();
             }
             
-            this.socket = new WebSocket(`ws://${serverAddress}:8081`);
+            // Salle choisie via ?room=<id> dans l'URL de la page (salle par défaut sinon)
+            const room = new URLSearchParams(window.location.search).get('room');
+            const path = room ? `/room/${encodeURIComponent(room)}` : '';
+
+            // Propose le mode binaire pour les trames d'écran (repli texte si refusé)
+            this.socket = new WebSocket(`ws://${serverAddress}:8081${path}`, ['rc-binary.v1']);
+            this.socket.binaryType = 'arraybuffer';
             
             this.socket.onopen = () => {
                 this.isConnected = true;
@@ -35,6 +55,12 @@ class SocketService {
             };
 
             this.socket.onmessage = (event) => {
+                if (event.data instanceof ArrayBuffer) {
+                    if (this.isAuthenticated) {
+                        this.handleBinaryScreenData(event.data);
+                    }
+                    return;
+                }
                 console.log('📨 Message WebSocket reçu:', event.data);
                 this.handleMessage(event.data);
             };
@@ -228,11 +254,6 @@ disconnect() {
                 const frameId = parseInt(parts[1]);
                 const base64Data = parts.slice(2).join(':');
                 
-                this.frameSkipCounter++;
-                if (this.frameSkipCounter % 2 !== 0) {
-                    return;
-                }
-                
                 if (frameId > this.lastFrameId) {
                     const imageUrl = `data:image/jpeg;base64,${base64Data}`;
                     
@@ -251,6 +272,58 @@ disconnect() {
         }
     }
 
+    // En-tête de 16 octets : type, codec, flags, frameId, largeur, hauteur
+    handleBinaryScreenData(buffer) {
+        try {
+            const now = Date.now();
+
+            if (now - this.lastRenderTime < this.MIN_RENDER_INTERVAL) {
+                return;
+            }
+
+            const view = new DataView(buffer);
+            const type = view.getUint8(0);
+            if (type !== 0x01) {
+                return;
+            }
+
+            // 0x01 = JPEG, 0x02 = PNG (QOI 0x03 n'est pas décodable nativement)
+            const mimeType = { 1: 'image/jpeg', 2: 'image/png' }[view.getUint8(1)];
+            if (!mimeType) {
+                return;
+            }
+
+            const frameId = Number(view.getBigInt64(4));
+            const width = view.getUint16(12);
+            const height = view.getUint16(14);
+
+            if (frameId > this.lastFrameId) {
+                const blob = new Blob([new Uint8Array(buffer, 16)], { type: mimeType });
+                const imageUrl = URL.createObjectURL(blob);
+
+                if (this.lastObjectUrl) {
+                    // Laisser le temps au rendu en cours de charger l'image précédente
+                    const previousUrl = this.lastObjectUrl;
+                    setTimeout(() => URL.revokeObjectURL(previousUrl), 1000);
+                }
+                this.lastObjectUrl = imageUrl;
+
+                this.emit('screenData', {
+                    frameId: frameId,
+                    imageUrl: imageUrl,
+                    width: width,
+                    height: height,
+                    timestamp: now
+                });
+
+                this.lastFrameId = frameId;
+                this.lastRenderTime = now;
+            }
+        } catch (error) {
+            console.error('Erreur traitement trame binaire:', error);
+        }
+    }
+
     authenticate(password, displayName) {
         if (this.isConnected && this.connectionApproved) {
             console.log('🔐 Envoi authentification avec nom:', displayName);
@@ -279,11 +352,40 @@ disconnect() {
 
     sendInputEvent(event) {
         if (this.isConnected && this.isAuthenticated) {
-            const message = 'INPUT_EVENT:' + JSON.stringify(event);
-            this.socket.send(message);
+            // Format binaire compact si le serveur a accepté le protocole binaire, JSON sinon
+            const encoded = this.socket.protocol === 'rc-binary.v1' ? this.encodeInputEvent(event) : null;
+            if (encoded) {
+                this.socket.send(encoded);
+            } else {
+                const message = 'INPUT_EVENT:' + JSON.stringify(event);
+                this.socket.send(message);
+            }
         }
     }
 
+    // Message INPUT_EVENT binaire : opcode puis 24 octets (voir InputEventCodec côté serveur)
+    encodeInputEvent(event) {
+        const typeCode = INPUT_EVENT_TYPES[event.type];
+        if (!typeCode) {
+            return null;
+        }
+        const clamp16 = (value) => Math.max(-32768, Math.min(32767, Math.round(value || 0)));
+
+        const buffer = new ArrayBuffer(25);
+        const view = new DataView(buffer);
+        view.setUint8(0, INPUT_EVENT_OPCODE);
+        view.setUint8(1, typeCode);
+        view.setUint8(2, event.button || 0);
+        view.setUint8(3, (event.ctrlKey ? 1 : 0) | (event.shiftKey ? 2 : 0) | (event.altKey ? 4 : 0));
+        view.setInt16(5, clamp16(event.x));
+        view.setInt16(7, clamp16(event.y));
+        view.setUint16(9, event.keyCode || 0);
+        view.setUint16(11, event.key && event.key.length === 1 ? event.key.charCodeAt(0) : 0);
+        view.setInt16(13, clamp16(event.deltaY));
+        view.setFloat64(17, event.timestamp || Date.now());
+        return buffer;
+    }
+
     sendChatMessage(message) {
         if (this.isConnected && this.isAuthenticated && message.trim()) {
             console.log('💬 Envoi message chat:', message.trim());